@@ -0,0 +1,58 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import studio.core.v1.model.asset.ByteArrayAssetSource;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+Digests of an asset's content: SHA-1, which identifies content across packs (archive entry names, conversion cache),
+and the xxHash64 deduplication key. Sources are created on each invocation, so that digests are not memoized.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AssetDigestBenchmark {
+
+    // Content size, in KB
+    @Param({"64", "1024"})
+    public int sizeKB;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        data = new byte[sizeKB * 1024];
+        new Random(42).nextBytes(data);
+    }
+
+    @Benchmark
+    public String sha1() {
+        return new ByteArrayAssetSource(data).getSha1Hex();
+    }
+
+    @Benchmark
+    public String dedupKey() {
+        return new ByteArrayAssetSource(data).getDedupKey();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import studio.core.v1.utils.AudioConversion;
+import studio.core.v1.utils.VorbisEncoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/*
+Single-threaded audio conversions of generated PCM audio. Run with `-prof studio.benchmarks.AudioProfiler` to get the
+realtime factor and allocations per second of audio.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AudioConversionBenchmark {
+
+    @Param({"1", "10", "60"})
+    public float durationSeconds;
+
+    @Param({"22050", "44100", "48000"})
+    public float sampleRate;
+
+    @Param({"1", "2"})
+    public int channels;
+
+    // Input WAV file
+    private byte[] wave;
+    // Output of anyToWave (mono 32000Hz), which is the input of waveToOgg
+    private byte[] deviceWave;
+    // Raw mono 44100Hz PCM, which is the input of the Vorbis encoder
+    private byte[] pcm;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        wave = Fixtures.wave(durationSeconds, sampleRate, channels, 1L);
+        deviceWave = AudioConversion.anyToWave(wave);
+        pcm = Fixtures.pcm(durationSeconds, AudioConversion.OGG_SAMPLE_RATE, AudioConversion.CHANNELS, 1L);
+    }
+
+    @Benchmark
+    public byte[] anyToWave() throws Exception {
+        byte[] output = AudioConversion.anyToWave(wave);
+        AudioSeconds.record(durationSeconds);
+        return output;
+    }
+
+    // Streamed conversion, without holding the output in memory
+    @Benchmark
+    public long anyToWaveStream() throws Exception {
+        long written = AudioConversion.anyToWave(new ByteArrayInputStream(wave), OutputStream.nullOutputStream());
+        AudioSeconds.record(durationSeconds);
+        return written;
+    }
+
+    @Benchmark
+    public byte[] waveToOgg() throws Exception {
+        byte[] output = AudioConversion.waveToOgg(deviceWave);
+        AudioSeconds.record(durationSeconds);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] anyToMp3() throws Exception {
+        byte[] output = AudioConversion.anyToMp3(wave);
+        AudioSeconds.record(durationSeconds);
+        return output;
+    }
+
+    @Benchmark
+    public byte[] vorbisEncode() throws Exception {
+        byte[] output = VorbisEncoder.encode(new ByteArrayInputStream(pcm));
+        AudioSeconds.record(durationSeconds);
+        return output;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Reports, for the audio benchmarks, the seconds of audio processed per second of CPU time (realtime factor) and the
+bytes allocated per second of audio. CPU time and allocations are summed over all the application threads of the
+benchmark VM (JIT compiler and GC threads excepted), so that encodings running on pools are accounted for.
+Run with `-prof studio.benchmarks.AudioProfiler`.
+ */
+public class AudioProfiler implements InternalProfiler {
+
+    private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // CPU time and allocated bytes of each thread at the beginning of the iteration
+    private Map<Long, long[]> counters = new HashMap<>();
+
+    @Override
+    public String getDescription() {
+        return "Realtime factor and allocations per second of audio";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        AudioSeconds.reset();
+        counters = readCounters();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams, IterationResult result) {
+        double audioSeconds = AudioSeconds.reset();
+        long cpuNanos = 0L;
+        long allocatedBytes = 0L;
+        for (Map.Entry<Long, long[]> entry : readCounters().entrySet()) {
+            // Threads started during the iteration count from zero
+            long[] before = counters.getOrDefault(entry.getKey(), new long[2]);
+            cpuNanos += entry.getValue()[0] - before[0];
+            allocatedBytes += entry.getValue()[1] - before[1];
+        }
+        if (audioSeconds == 0 || cpuNanos == 0) {
+            return List.of();
+        }
+        return List.of(
+                new ScalarResult("audio.realtime", audioSeconds / (cpuNanos / 1e9), "x", AggregationPolicy.AVG),
+                new ScalarResult("audio.alloc.norm", allocatedBytes / audioSeconds, "B/audio-s", AggregationPolicy.AVG)
+        );
+    }
+
+    private Map<Long, long[]> readCounters() {
+        long[] ids = threads.getAllThreadIds();
+        long[] cpuTimes = threads.getThreadCpuTime(ids);
+        long[] allocatedBytes = threads.getThreadAllocatedBytes(ids);
+        Map<Long, long[]> values = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            // Thread may have died in the meantime
+            if (cpuTimes[i] >= 0 && allocatedBytes[i] >= 0) {
+                values.put(ids[i], new long[]{cpuTimes[i], allocatedBytes[i]});
+            }
+        }
+        return values;
+    }
+}
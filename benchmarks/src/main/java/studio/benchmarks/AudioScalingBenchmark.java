@@ -0,0 +1,82 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import studio.core.v1.utils.AudioConversion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+Multi-threaded scaling of audio conversions: each operation converts `parallelism` distinct files concurrently, on as
+many threads. With perfect scaling, operations per second do not depend on parallelism (up to the number of cores).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AudioScalingBenchmark {
+
+    private static final float DURATION_SECONDS = 10;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"ogg", "mp3"})
+    public String codec;
+
+    private ExecutorService executor;
+    private List<byte[]> waves;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(parallelism);
+        waves = new ArrayList<>();
+        for (int i = 0; i < parallelism; i++) {
+            byte[] wave = Fixtures.wave(DURATION_SECONDS, AudioConversion.WAVE_SAMPLE_RATE, AudioConversion.CHANNELS, i);
+            waves.add(wave);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void convert(Blackhole blackhole) throws Exception {
+        List<Callable<byte[]>> conversions = new ArrayList<>();
+        for (byte[] wave : waves) {
+            conversions.add("ogg".equals(codec) ? () -> AudioConversion.waveToOgg(wave) : () -> AudioConversion.anyToMp3(wave));
+        }
+        for (Future<byte[]> future : executor.invokeAll(conversions)) {
+            blackhole.consume(future.get());
+        }
+        AudioSeconds.record(DURATION_SECONDS * parallelism);
+    }
+}
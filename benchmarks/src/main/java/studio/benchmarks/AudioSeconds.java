@@ -0,0 +1,25 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import java.util.concurrent.atomic.DoubleAdder;
+
+/*
+Seconds of audio processed by audio benchmarks during the current iteration, read by the AudioProfiler.
+ */
+public class AudioSeconds {
+
+    private static final DoubleAdder SECONDS = new DoubleAdder();
+
+    public static void record(double seconds) {
+        SECONDS.add(seconds);
+    }
+
+    static double reset() {
+        return SECONDS.sumThenReset();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import javax.imageio.ImageIO;
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/*
+Deterministic (seeded) audio and image fixtures, so that benchmark results can be reproduced without any device or
+sample files.
+ */
+public class Fixtures {
+
+    // 16-bits signed little-endian PCM WAV file: a few mixed tones with some noise
+    public static byte[] wave(float durationSeconds, float sampleRate, int channels, long seed) throws IOException {
+        byte[] pcm = pcm(durationSeconds, sampleRate, channels, seed);
+        AudioFormat format = new AudioFormat(sampleRate, 16, channels, true, false);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AudioSystem.write(new AudioInputStream(new ByteArrayInputStream(pcm), format, pcm.length / format.getFrameSize()), AudioFileFormat.Type.WAVE, output);
+        return output.toByteArray();
+    }
+
+    // Raw 16-bits signed little-endian PCM samples
+    public static byte[] pcm(float durationSeconds, float sampleRate, int channels, long seed) {
+        Random random = new Random(seed);
+        int frames = (int) (durationSeconds * sampleRate);
+        double frequency1 = 110 + random.nextInt(880);
+        double frequency2 = 110 + random.nextInt(880);
+        byte[] pcm = new byte[frames * channels * 2];
+        for (int i = 0; i < frames; i++) {
+            double t = i / sampleRate;
+            double sample = 0.4 * Math.sin(2 * Math.PI * frequency1 * t) + 0.3 * Math.sin(2 * Math.PI * frequency2 * t) + 0.05 * random.nextGaussian();
+            short value = (short) (Math.max(-1.0, Math.min(1.0, sample)) * Short.MAX_VALUE);
+            for (int c = 0; c < channels; c++) {
+                int offset = (i * channels + c) * 2;
+                pcm[offset] = (byte) value;
+                pcm[offset + 1] = (byte) (value >> 8);
+            }
+        }
+        return pcm;
+    }
+
+    public enum ImageKind {
+        // Few flat colors, as in most drawings made for the device
+        FLAT,
+        // Smooth gradients with noise, as in photos
+        PHOTO
+    }
+
+    public static BufferedImage image(int width, int height, ImageKind kind, long seed) {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        if (kind == ImageKind.FLAT) {
+            int[] colors = new int[6];
+            for (int i = 0; i < colors.length; i++) {
+                colors[i] = random.nextInt(0x1000000);
+            }
+            int cellWidth = Math.max(1, width / (4 + random.nextInt(4)));
+            int cellHeight = Math.max(1, height / (3 + random.nextInt(4)));
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    image.setRGB(x, y, colors[(x / cellWidth + 2 * (y / cellHeight)) % colors.length]);
+                }
+            }
+        } else {
+            double phase = random.nextDouble() * Math.PI;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int r = clamp(128 + 127 * Math.sin(phase + x * 6.0 / width) + random.nextGaussian() * 12);
+                    int g = clamp(128 + 127 * Math.cos(phase + y * 5.0 / height) + random.nextGaussian() * 12);
+                    int b = clamp(255.0 * (x + y) / (width + height) + random.nextGaussian() * 12);
+                    image.setRGB(x, y, (r << 16) | (g << 8) | b);
+                }
+            }
+        }
+        return image;
+    }
+
+    // Image encoded in the given ImageIO format (e.g. "png", "jpg", "bmp")
+    public static byte[] encodedImage(int width, int height, ImageKind kind, String format, long seed) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image(width, height, kind, seed), format, output);
+        return output.toByteArray();
+    }
+
+    private static int clamp(double value) {
+        return (int) Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import com.jhlabs.image.OctTreeQuantizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import studio.core.v1.utils.ImageConversion;
+import studio.core.v1.utils.RLE4BitmapEncoder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+Each stage of the preparation of images for firmware 2.4+ (anyToRLECompressedBitmap), and the whole conversion. Each
+stage takes the output of the previous one, computed once per trial. Run with `-prof gc` to get allocations per stage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageConversionBenchmark {
+
+    @Param({"FLAT", "PHOTO"})
+    public Fixtures.ImageKind kind;
+
+    @Param({"png", "jpg"})
+    public String format;
+
+    @Param({"320x240", "2048x1536"})
+    public String size;
+
+    private byte[] encoded;
+    private BufferedImage decoded;
+    private int[] pixels;
+    private byte[] indexed;
+    private int[] palette;
+    // Quantizers are reused from one image to the next
+    private final OctTreeQuantizer quantizer = new OctTreeQuantizer();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] dimensions = size.split("x");
+        encoded = Fixtures.encodedImage(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), kind, format, 1L);
+        decoded = decode();
+        pixels = decoded.getRGB(0, 0, decoded.getWidth(), decoded.getHeight(), null, 0, decoded.getWidth());
+        indexed = new byte[pixels.length];
+        palette = ImageConversion.quantize(decoded, indexed);
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(encoded));
+    }
+
+    // Palette building only, without the pixels remapping and dithering done by quantize
+    @Benchmark
+    public int[] octTreePalette() {
+        quantizer.setup(16);
+        quantizer.addPixels(pixels, 0, pixels.length);
+        return quantizer.buildColorTable();
+    }
+
+    // Palette building, dithering and indexing of the pixels
+    @Benchmark
+    public int[] quantize() {
+        return ImageConversion.quantize(decoded, new byte[pixels.length]);
+    }
+
+    @Benchmark
+    public byte[] encodeRLE4() {
+        return RLE4BitmapEncoder.encode(indexed, decoded.getWidth(), decoded.getHeight(), palette);
+    }
+
+    @Benchmark
+    public byte[] anyToRLECompressedBitmap() throws IOException {
+        return ImageConversion.anyToRLECompressedBitmap(encoded);
+    }
+}
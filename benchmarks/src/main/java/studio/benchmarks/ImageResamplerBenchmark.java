@@ -0,0 +1,71 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import studio.core.v1.utils.ImageConversion;
+import studio.core.v1.utils.ImageResampler;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+Scaling of large images down to the device's screen resolution, with each filter, and the whole preparation of images
+for firmware 2.4+ with the scaling stage. Compare with ImageConversionBenchmark.anyToRLECompressedBitmap, which
+quantizes and encodes images at their original size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageResamplerBenchmark {
+
+    @Param({"FLAT", "PHOTO"})
+    public Fixtures.ImageKind kind;
+
+    @Param({"2048x1536", "4000x3000"})
+    public String size;
+
+    @Param({"BILINEAR", "BICUBIC", "AREA_AVERAGING", "LANCZOS3"})
+    public ImageResampler.Filter filter;
+
+    private byte[] encoded;
+    private BufferedImage decoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] dimensions = size.split("x");
+        encoded = Fixtures.encodedImage(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), kind, "jpg", 1L);
+        decoded = ImageConversion.removeAlpha(ImageIO.read(new ByteArrayInputStream(encoded)));
+    }
+
+    @Benchmark
+    public BufferedImage fitToDevice() {
+        return ImageResampler.fitToDevice(decoded, filter);
+    }
+
+    @Benchmark
+    public byte[] anyToRLECompressedBitmap() throws IOException {
+        return ImageConversion.anyToRLECompressedBitmap(encoded, filter);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import studio.core.v1.model.StoryPack;
+import studio.core.v1.writer.archive.ArchiveStoryPackWriter;
+import studio.core.v1.writer.binary.BinaryStoryPackWriter;
+import studio.core.v1.writer.fs.FsStoryPackWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/*
+Synthetic packs of each format, written once per trial in a temporary folder.
+ */
+@State(Scope.Benchmark)
+public class PackFiles {
+
+    // Bytes of MP3 audio per second (mono, 128kbps)
+    private static final int MP3_BYTES_PER_SECOND = 16000;
+    // Distinct assets of FS packs, which are costly to encode
+    private static final int FS_DISTINCT_ASSETS = 8;
+
+    @Param({"10", "100"})
+    public int nodeCount;
+
+    @Param({"16384", "262144"})
+    public int assetSize;
+
+    public Path directory;
+    public StoryPack rawPack;
+    public StoryPack archivePack;
+    public StoryPack fsPack;
+    public Path rawFile;
+    public Path archiveFile;
+    public Path fsFolder;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("studio-benchmarks");
+
+        rawPack = SyntheticPacks.randomPack(nodeCount, assetSize, "image/bmp", "audio/x-wav", 1L);
+        rawFile = directory.resolve("pack.pack");
+        try (OutputStream os = Files.newOutputStream(rawFile)) {
+            new BinaryStoryPackWriter().write(rawPack, os, true);
+        }
+
+        archivePack = SyntheticPacks.randomPack(nodeCount, assetSize, "image/png", "audio/ogg", 2L);
+        archiveFile = directory.resolve("pack.zip");
+        try (OutputStream os = Files.newOutputStream(archiveFile)) {
+            new ArchiveStoryPackWriter().write(archivePack, os);
+        }
+
+        fsPack = SyntheticPacks.fsPack(nodeCount, (float) assetSize / MP3_BYTES_PER_SECOND, FS_DISTINCT_ASSETS, 3L);
+        Path fsParent = Files.createDirectories(directory.resolve("fs"));
+        // The FS reader takes the pack uuid from the folder name
+        fsFolder = Files.move(new FsStoryPackWriter().write(fsPack, fsParent), fsParent.resolve(fsPack.getUuid()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory.toFile());
+    }
+}
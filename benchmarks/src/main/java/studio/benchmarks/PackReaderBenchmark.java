@@ -0,0 +1,87 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import studio.core.v1.model.StageNode;
+import studio.core.v1.model.StoryPack;
+import studio.core.v1.reader.archive.ArchiveStoryPackReader;
+import studio.core.v1.reader.binary.BinaryStoryPackReader;
+import studio.core.v1.reader.fs.FsStoryPackReader;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/*
+Reads a whole pack of each format, including the content of all its assets.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackReaderBenchmark {
+
+    @Benchmark
+    public void readArchiveStream(PackFiles files, Blackhole blackhole) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(files.archiveFile))) {
+            drain(new ArchiveStoryPackReader().read(is), blackhole);
+        }
+    }
+
+    @Benchmark
+    public void readArchiveChannel(PackFiles files, Blackhole blackhole) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(files.archiveFile)) {
+            drain(new ArchiveStoryPackReader().read(channel), blackhole);
+        }
+    }
+
+    @Benchmark
+    public void readRawStream(PackFiles files, Blackhole blackhole) throws IOException {
+        try (InputStream is = new BufferedInputStream(Files.newInputStream(files.rawFile))) {
+            drain(new BinaryStoryPackReader().read(is), blackhole);
+        }
+    }
+
+    @Benchmark
+    public void readRawChannel(PackFiles files, Blackhole blackhole) throws IOException {
+        try (FileChannel channel = FileChannel.open(files.rawFile)) {
+            drain(new BinaryStoryPackReader().read(channel), blackhole);
+        }
+    }
+
+    @Benchmark
+    public void readFs(PackFiles files, Blackhole blackhole) throws IOException {
+        drain(new FsStoryPackReader().read(files.fsFolder), blackhole);
+    }
+
+    // Assets may be read lazily: consume all of them while the pack is still open
+    private static void drain(StoryPack pack, Blackhole blackhole) throws IOException {
+        for (StageNode node : pack.getStageNodes()) {
+            if (node.getImage() != null) {
+                blackhole.consume(node.getImage().getSource().transferTo(OutputStream.nullOutputStream()));
+            }
+            if (node.getAudio() != null) {
+                blackhole.consume(node.getAudio().getSource().transferTo(OutputStream.nullOutputStream()));
+            }
+        }
+        blackhole.consume(pack);
+    }
+}
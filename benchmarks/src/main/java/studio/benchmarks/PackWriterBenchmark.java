@@ -0,0 +1,54 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import studio.core.v1.writer.archive.ArchiveStoryPackWriter;
+import studio.core.v1.writer.binary.BinaryStoryPackWriter;
+import studio.core.v1.writer.fs.FsStoryPackWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/*
+Writes a whole pack of each format. Archive and raw packs are written to a null stream, so that only the writers are
+measured. FS packs are written to the same folder on each invocation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PackWriterBenchmark {
+
+    @Benchmark
+    public void writeArchive(PackFiles files) throws IOException {
+        new ArchiveStoryPackWriter(Deflater.DEFAULT_COMPRESSION, files.directory).write(files.archivePack, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public void writeRaw(PackFiles files) throws IOException {
+        new BinaryStoryPackWriter().write(files.rawPack, OutputStream.nullOutputStream(), true);
+    }
+
+    @Benchmark
+    public void writeFs(PackFiles files, Blackhole blackhole) throws Exception {
+        Path output = Files.createDirectories(files.directory.resolve("fs-output"));
+        blackhole.consume(new FsStoryPackWriter().write(files.fsPack, output));
+    }
+}
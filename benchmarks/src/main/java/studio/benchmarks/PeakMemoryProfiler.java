@@ -0,0 +1,66 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*
+Reports the peak heap usage of each iteration, and the direct and mapped buffers still in use at its end.
+Run with `-prof studio.benchmarks.PeakMemoryProfiler`.
+ */
+public class PeakMemoryProfiler implements InternalProfiler {
+
+    private static final double MB = 1024.0 * 1024.0;
+
+    @Override
+    public String getDescription() {
+        return "Peak heap usage, direct and mapped buffers usage";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams, IterationResult result) {
+        // Peaks of the heap pools do not happen at the same time: their sum is an upper bound
+        long peakHeap = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        List<Result> results = new ArrayList<>();
+        results.add(new ScalarResult("mem.heap.peak", peakHeap / MB, "MB", AggregationPolicy.MAX));
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (!"direct".equals(pool.getName()) && !"mapped".equals(pool.getName())) {
+                continue;
+            }
+            results.add(new ScalarResult("mem." + pool.getName() + ".used", pool.getMemoryUsed() / MB, "MB", AggregationPolicy.MAX));
+        }
+        return results;
+    }
+}
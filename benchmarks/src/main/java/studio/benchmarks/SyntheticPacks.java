@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.benchmarks;
+
+import studio.core.v1.model.ActionNode;
+import studio.core.v1.model.AudioAsset;
+import studio.core.v1.model.ControlSettings;
+import studio.core.v1.model.ImageAsset;
+import studio.core.v1.model.StageNode;
+import studio.core.v1.model.StoryPack;
+import studio.core.v1.model.Transition;
+import studio.core.v1.utils.AudioConversion;
+import studio.core.v1.utils.ImageConversion;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/*
+Story packs of configurable size: stage nodes are chained by single-option action nodes, and each one has its own
+image and audio assets.
+ */
+public class SyntheticPacks {
+
+    // Pack with random asset content of the given size. Writers do not look into assets, except the FS writer.
+    public static StoryPack randomPack(int nodeCount, int assetSize, String imageMimeType, String audioMimeType, long seed) {
+        Random random = new Random(seed);
+        List<ImageAsset> images = new ArrayList<>();
+        List<AudioAsset> audios = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            byte[] imageData = new byte[assetSize];
+            random.nextBytes(imageData);
+            images.add(new ImageAsset(imageMimeType, imageData, "image" + i));
+            byte[] audioData = new byte[assetSize];
+            random.nextBytes(audioData);
+            audios.add(new AudioAsset(audioMimeType, audioData, "audio" + i));
+        }
+        return pack(images, audios, random);
+    }
+
+    // Pack with assets accepted by the FS writer: 4-bits/RLE BMP images and mono 44100Hz MP3 sounds. Encoding is
+    // slow, so only a few distinct assets are encoded and shared by the nodes.
+    public static StoryPack fsPack(int nodeCount, float audioDurationSeconds, int distinctAssets, long seed) throws IOException {
+        Random random = new Random(seed);
+        List<byte[]> imageData = new ArrayList<>();
+        List<byte[]> audioData = new ArrayList<>();
+        for (int i = 0; i < Math.min(nodeCount, distinctAssets); i++) {
+            imageData.add(ImageConversion.anyToRLECompressedBitmap(Fixtures.encodedImage(320, 240, Fixtures.ImageKind.FLAT, "png", seed + i)));
+            try {
+                audioData.add(AudioConversion.anyToMp3(Fixtures.wave(audioDurationSeconds, AudioConversion.MP3_SAMPLE_RATE, 1, seed + i)));
+            } catch (Exception e) {
+                throw new IOException("Failed to encode MP3 fixture", e);
+            }
+        }
+        List<ImageAsset> images = new ArrayList<>();
+        List<AudioAsset> audios = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            images.add(new ImageAsset("image/bmp", imageData.get(i % imageData.size()), "image" + i));
+            audios.add(new AudioAsset("audio/mpeg", audioData.get(i % audioData.size()), "audio" + i));
+        }
+        return pack(images, audios, random);
+    }
+
+    private static StoryPack pack(List<ImageAsset> images, List<AudioAsset> audios, Random random) {
+        List<StageNode> stageNodes = new ArrayList<>();
+        for (int i = 0; i < images.size(); i++) {
+            stageNodes.add(new StageNode(
+                    new UUID(random.nextLong(), random.nextLong()).toString(),
+                    images.get(i),
+                    audios.get(i),
+                    null,
+                    null,
+                    new ControlSettings(true, true, true, false, false),
+                    null
+            ));
+        }
+        // Chain stage nodes
+        for (int i = 0; i < stageNodes.size() - 1; i++) {
+            ActionNode actionNode = new ActionNode(List.of(stageNodes.get(i + 1)), null);
+            stageNodes.get(i).setOkTransition(new Transition(actionNode, (short) 0));
+        }
+        return new StoryPack(stageNodes.get(0).getUuid(), false, (short) 1, stageNodes, null, false);
+    }
+}
@@ -16,15 +16,15 @@ limitations under the License.
 
 package com.jhlabs.image;
 
-import java.util.*;
-import java.io.*;
-import java.awt.*;
-import java.awt.image.*;
+import java.util.Arrays;
 
 /**
  * An image Quantizer based on the Octree algorithm. This is a very basic implementation
  * at present and could be much improved by picking the nodes to reduce more carefully
  * (i.e. not completely at random) when I get the time.
+ * <p>
+ * Nodes are kept in flat arrays, and released nodes are reused, so that a quantizer can be
+ * set up again and reused for several images without allocating. Instances are not thread-safe.
  */
 public class OctTreeQuantizer implements Quantizer {
 
@@ -34,58 +34,56 @@ public class OctTreeQuantizer implements Quantizer {
     final static int MAX_LEVEL = 5;
 
     /**
-     * An Octtree node.
+     * The root node. It is never the child of another node, hence 0 also means "no child".
      */
-    class OctTreeNode {
-        int children;
-        int level;
-        OctTreeNode parent;
-        OctTreeNode leaf[] = new OctTreeNode[8];
-        boolean isLeaf;
-        int count;
-        int	totalRed;
-        int	totalGreen;
-        int	totalBlue;
-        int index;
-
-        /**
-         * A debugging method which prints the tree out.
-         */
-        public void list(PrintStream s, int level) {
-            for (int i = 0; i < level; i++)
-                System.out.print(' ');
-            if (count == 0)
-                System.out.println(index+": count="+count);
-            else
-                System.out.println(index+": count="+count+" red="+(totalRed/count)+" green="+(totalGreen/count)+" blue="+(totalBlue/count));
-            for (int i = 0; i < 8; i++)
-                if (leaf[i] != null)
-                    leaf[i].list(s, level+2);
-        }
-    }
+    private final static int ROOT = 0;
+    private final static int NO_CHILD = 0;
+
+    private final static int INITIAL_CAPACITY = 1024;
+
+    // Node pool
+    private int capacity;
+    private int[] childNodes;
+    private int[] childCount;
+    private boolean[] isLeaf;
+    private boolean[] isRemoved;
+    private int[] count;
+    private long[] totalRed;
+    private long[] totalGreen;
+    private long[] totalBlue;
+    private int[] colorIndex;
+    private int allocatedNodes;
+    private int[] freeNodes;
+    private int freeCount;
+
+    // Nodes of each level, in order of creation
+    private final int[][] levelNodes = new int[MAX_LEVEL+1][];
+    private final int[] levelSize = new int[MAX_LEVEL+1];
 
-    private int nodes = 0;
-    private OctTreeNode root;
     private int reduceColors;
     private int maximumColors;
     private int colors = 0;
-    private Vector[] colorList;
 
     public OctTreeQuantizer() {
-        setup(256);
-        colorList = new Vector[MAX_LEVEL+1];
+        allocate(INITIAL_CAPACITY);
         for (int i = 0; i < MAX_LEVEL+1; i++)
-            colorList[i] = new Vector();
-        root = new OctTreeNode();
+            levelNodes[i] = new int[INITIAL_CAPACITY / 4];
+        setup(256);
     }
 
     /**
      * Initialize the quantizer. This should be called before adding any pixels.
+     * Any previously added pixels are discarded.
      * @param numColors the number of colors we're quantizing to.
      */
     public void setup(int numColors) {
         maximumColors = numColors;
         reduceColors = Math.max(512, numColors * 2);
+        colors = 0;
+        allocatedNodes = 0;
+        freeCount = 0;
+        Arrays.fill(levelSize, 0);
+        newNode();
     }
 
     /**
@@ -112,26 +110,15 @@ public class OctTreeQuantizer implements Quantizer {
         int green = (rgb >> 8) & 0xff;
         int blue = rgb & 0xff;
 
-        OctTreeNode node = root;
+        int node = ROOT;
 
         for (int level = 0; level <= MAX_LEVEL; level++) {
-            OctTreeNode child;
-            int bit = 0x80 >> level;
-
-            int index = 0;
-            if ((red & bit) != 0)
-                index += 4;
-            if ((green & bit) != 0)
-                index += 2;
-            if ((blue & bit) != 0)
-                index += 1;
-
-            child = node.leaf[index];
-
-            if (child == null)
-                return node.index;
-            else if (child.isLeaf)
-                return child.index;
+            int child = childNodes[node * 8 + childOffset(red, green, blue, level)];
+
+            if (child == NO_CHILD)
+                return colorIndex[node];
+            else if (isLeaf[child])
+                return colorIndex[child];
             else
                 node = child;
         }
@@ -139,55 +126,54 @@ public class OctTreeQuantizer implements Quantizer {
         return 0;
     }
 
+    private static int childOffset(int red, int green, int blue, int level) {
+        int bit = 0x80 >> level;
+
+        int index = 0;
+        if ((red & bit) != 0)
+            index += 4;
+        if ((green & bit) != 0)
+            index += 2;
+        if ((blue & bit) != 0)
+            index += 1;
+        return index;
+    }
+
     private void insertColor(int rgb) {
         int red = (rgb >> 16) & 0xff;
         int green = (rgb >> 8) & 0xff;
         int blue = rgb & 0xff;
 
-        OctTreeNode node = root;
+        int node = ROOT;
 
-//		System.out.println("insertColor="+Integer.toHexString(rgb));
         for (int level = 0; level <= MAX_LEVEL; level++) {
-            OctTreeNode child;
-            int bit = 0x80 >> level;
-
-            int index = 0;
-            if ((red & bit) != 0)
-                index += 4;
-            if ((green & bit) != 0)
-                index += 2;
-            if ((blue & bit) != 0)
-                index += 1;
-
-            child = node.leaf[index];
-
-            if (child == null) {
-                node.children++;
+            int slot = node * 8 + childOffset(red, green, blue, level);
+            int child = childNodes[slot];
 
-                child = new OctTreeNode();
-                child.parent = node;
-                node.leaf[index] = child;
-                node.isLeaf = false;
-                nodes++;
-                colorList[level].addElement(child);
+            if (child == NO_CHILD) {
+                child = newNode();
+                // Node arrays may have been reallocated
+                childNodes[slot] = child;
+                childCount[node]++;
+                isLeaf[node] = false;
+                addToLevel(level, child);
 
                 if (level == MAX_LEVEL) {
-                    child.isLeaf = true;
-                    child.count = 1;
-                    child.totalRed = red;
-                    child.totalGreen = green;
-                    child.totalBlue = blue;
-                    child.level = level;
+                    isLeaf[child] = true;
+                    count[child] = 1;
+                    totalRed[child] = red;
+                    totalGreen[child] = green;
+                    totalBlue[child] = blue;
                     colors++;
                     return;
                 }
 
                 node = child;
-            } else if (child.isLeaf) {
-                child.count++;
-                child.totalRed += red;
-                child.totalGreen += green;
-                child.totalBlue += blue;
+            } else if (isLeaf[child]) {
+                count[child]++;
+                totalRed[child] += red;
+                totalGreen[child] += green;
+                totalBlue[child] += blue;
                 return;
             } else
                 node = child;
@@ -197,34 +183,35 @@ public class OctTreeQuantizer implements Quantizer {
 
     private void reduceTree(int numColors) {
         for (int level = MAX_LEVEL-1; level >= 0; level--) {
-            Vector v = colorList[level];
-            if (v != null && v.size() > 0) {
-                for (int j = 0; j < v.size(); j++) {
-                    OctTreeNode node = (OctTreeNode)v.elementAt(j);
-                    if (node.children > 0) {
-                        for (int i = 0; i < 8; i++) {
-                            OctTreeNode child = node.leaf[i];
-                            if (child != null) {
-                                if (!child.isLeaf)
-                                    System.out.println("not a leaf!");
-                                node.count += child.count;
-                                node.totalRed += child.totalRed;
-                                node.totalGreen += child.totalGreen;
-                                node.totalBlue += child.totalBlue;
-                                node.leaf[i] = null;
-                                node.children--;
-                                colors--;
-                                nodes--;
-                                colorList[level+1].removeElement(child);
-                            }
+            int[] nodes = levelNodes[level];
+            int size = levelSize[level];
+            for (int j = 0; j < size; j++) {
+                int node = nodes[j];
+                if (childCount[node] > 0) {
+                    for (int i = 0; i < 8; i++) {
+                        int child = childNodes[node * 8 + i];
+                        if (child != NO_CHILD) {
+                            if (!isLeaf[child])
+                                System.out.println("not a leaf!");
+                            count[node] += count[child];
+                            totalRed[node] += totalRed[child];
+                            totalGreen[node] += totalGreen[child];
+                            totalBlue[node] += totalBlue[child];
+                            childNodes[node * 8 + i] = NO_CHILD;
+                            childCount[node]--;
+                            colors--;
+                            isRemoved[child] = true;
                         }
-                        node.isLeaf = true;
-                        colors++;
-                        if (colors <= numColors)
-                            return;
+                    }
+                    isLeaf[node] = true;
+                    colors++;
+                    if (colors <= numColors) {
+                        releaseRemoved(level+1);
+                        return;
                     }
                 }
             }
+            releaseRemoved(level+1);
         }
 
         System.out.println("Unable to reduce the OctTree");
@@ -235,8 +222,10 @@ public class OctTreeQuantizer implements Quantizer {
      * @return the color table
      */
     public int[] buildColorTable() {
+        if (colors > maximumColors)
+            reduceTree(maximumColors);
         int[] table = new int[colors];
-        buildColorTable(root, table, 0);
+        buildColorTable(ROOT, table, 0);
         return table;
     }
 
@@ -255,29 +244,97 @@ public class OctTreeQuantizer implements Quantizer {
         }
         if (colors > maximumColors)
             reduceTree(maximumColors);
-        buildColorTable(root, table, 0);
+        buildColorTable(ROOT, table, 0);
     }
 
-    private int buildColorTable(OctTreeNode node, int[] table, int index) {
-        if (colors > maximumColors)
-            reduceTree(maximumColors);
-
-        if (node.isLeaf) {
-            int count = node.count;
+    private int buildColorTable(int node, int[] table, int index) {
+        if (isLeaf[node]) {
+            int count = this.count[node];
             table[index] = 0xff000000 |
-                    ((node.totalRed/count) << 16) |
-                    ((node.totalGreen/count) << 8) |
-                    node.totalBlue/count;
-            node.index = index++;
+                    ((int) (totalRed[node]/count) << 16) |
+                    ((int) (totalGreen[node]/count) << 8) |
+                    (int) (totalBlue[node]/count);
+            colorIndex[node] = index++;
         } else {
             for (int i = 0; i < 8; i++) {
-                if (node.leaf[i] != null) {
-                    node.index = index;
-                    index = buildColorTable(node.leaf[i], table, index);
+                int child = childNodes[node * 8 + i];
+                if (child != NO_CHILD) {
+                    colorIndex[node] = index;
+                    index = buildColorTable(child, table, index);
                 }
             }
         }
         return index;
     }
 
+    private int newNode() {
+        int node;
+        if (freeCount > 0) {
+            node = freeNodes[--freeCount];
+        } else {
+            if (allocatedNodes == capacity)
+                allocate(capacity * 2);
+            node = allocatedNodes++;
+        }
+        Arrays.fill(childNodes, node * 8, node * 8 + 8, NO_CHILD);
+        childCount[node] = 0;
+        isLeaf[node] = false;
+        isRemoved[node] = false;
+        count[node] = 0;
+        totalRed[node] = 0;
+        totalGreen[node] = 0;
+        totalBlue[node] = 0;
+        colorIndex[node] = 0;
+        return node;
+    }
+
+    private void addToLevel(int level, int node) {
+        if (levelSize[level] == levelNodes[level].length)
+            levelNodes[level] = Arrays.copyOf(levelNodes[level], levelSize[level] * 2);
+        levelNodes[level][levelSize[level]++] = node;
+    }
+
+    // Removes the nodes merged into their parent from the given level, keeping the order of the others
+    private void releaseRemoved(int level) {
+        if (level > MAX_LEVEL)
+            return;
+        int[] nodes = levelNodes[level];
+        int size = 0;
+        for (int j = 0; j < levelSize[level]; j++) {
+            int node = nodes[j];
+            if (isRemoved[node])
+                freeNodes[freeCount++] = node;
+            else
+                nodes[size++] = node;
+        }
+        levelSize[level] = size;
+    }
+
+    private void allocate(int newCapacity) {
+        if (childNodes == null) {
+            childNodes = new int[newCapacity * 8];
+            childCount = new int[newCapacity];
+            isLeaf = new boolean[newCapacity];
+            isRemoved = new boolean[newCapacity];
+            count = new int[newCapacity];
+            totalRed = new long[newCapacity];
+            totalGreen = new long[newCapacity];
+            totalBlue = new long[newCapacity];
+            colorIndex = new int[newCapacity];
+            freeNodes = new int[newCapacity];
+        } else {
+            childNodes = Arrays.copyOf(childNodes, newCapacity * 8);
+            childCount = Arrays.copyOf(childCount, newCapacity);
+            isLeaf = Arrays.copyOf(isLeaf, newCapacity);
+            isRemoved = Arrays.copyOf(isRemoved, newCapacity);
+            count = Arrays.copyOf(count, newCapacity);
+            totalRed = Arrays.copyOf(totalRed, newCapacity);
+            totalGreen = Arrays.copyOf(totalGreen, newCapacity);
+            totalBlue = Arrays.copyOf(totalBlue, newCapacity);
+            colorIndex = Arrays.copyOf(colorIndex, newCapacity);
+            freeNodes = Arrays.copyOf(freeNodes, newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
 }
@@ -19,6 +19,7 @@ package com.jhlabs.image;
 import java.util.*;
 import java.awt.*;
 import java.awt.image.*;
+import java.util.stream.IntStream;
 
 /**
  * A filter which quantizes an image to a set number of colors - useful for producing
@@ -41,9 +42,15 @@ public class QuantizeFilter extends WholeImageFilter {
     };
     private int sum = 3+5+7+1;
 
+    /**
+     * Quantizers are reused by each thread, so that quantizing many images does not build a new tree each time.
+     */
+    private final static ThreadLocal<OctTreeQuantizer> quantizers = ThreadLocal.withInitial(OctTreeQuantizer::new);
+
     private boolean dither;
     private int numColors = 256;
     private boolean serpentine = true;
+    private int ditherBands = 1;
 
     /**
      * Set the number of colors to quantize to.
@@ -93,74 +100,141 @@ public class QuantizeFilter extends WholeImageFilter {
         return serpentine;
     }
 
+    /**
+     * Set the number of horizontal bands dithered in parallel. The error is only diffused along each row, so the
+     * output is the same whatever the number of bands.
+     * @param ditherBands the number of bands. The default is 1.
+     */
+    public void setDitherBands(int ditherBands) {
+        this.ditherBands = Math.max(ditherBands, 1);
+    }
+
+    /**
+     * Return the number of bands dithered in parallel.
+     * @return the current setting
+     */
+    public int getDitherBands() {
+        return ditherBands;
+    }
+
     public void quantize(int[] inPixels, int[] outPixels, int width, int height, int numColors, boolean dither, boolean serpentine) {
+        quantize(inPixels, outPixels, null, width, height, numColors, dither, serpentine);
+    }
+
+    /**
+     * Quantize pixels to indexes in a color table, e.g. to encode them with an index color model, using the
+     * current settings of the filter. The input pixels are modified by dithering.
+     * @param inPixels the ARGB pixels of the image
+     * @param outIndexes the index in the color table of each output pixel
+     * @param width the width of the image
+     * @param height the height of the image
+     * @return the color table, with at most the number of colors of the filter (256, so indexes fit in bytes)
+     */
+    public int[] quantizeToIndexes(int[] inPixels, byte[] outIndexes, int width, int height) {
+        return quantize(inPixels, null, outIndexes, width, height, numColors, dither, serpentine);
+    }
+
+    private int[] quantize(int[] inPixels, int[] outPixels, byte[] outIndexes, int width, int height, int numColors, boolean dither, boolean serpentine) {
         int count = width*height;
-        Quantizer quantizer = new OctTreeQuantizer();
+        Quantizer quantizer = quantizers.get();
         quantizer.setup(numColors);
         quantizer.addPixels(inPixels, 0, count);
         int[] table =  quantizer.buildColorTable();
 
         if (!dither) {
-            for (int i = 0; i < count; i++)
-                outPixels[i] = table[quantizer.getIndexForColor(inPixels[i])];
+            for (int i = 0; i < count; i++) {
+                int index = quantizer.getIndexForColor(inPixels[i]);
+                if (outPixels != null)
+                    outPixels[i] = table[index];
+                if (outIndexes != null)
+                    outIndexes[i] = (byte) index;
+            }
         } else {
-            int index = 0;
-            for (int y = 0; y < height; y++) {
-                boolean reverse = serpentine && (y & 1) == 1;
-                int direction;
-                if (reverse) {
-                    index = y*width+width-1;
-                    direction = -1;
-                } else {
-                    index = y*width;
-                    direction = 1;
-                }
-                for (int x = 0; x < width; x++) {
-                    int rgb1 = inPixels[index];
-                    int rgb2 = table[quantizer.getIndexForColor(rgb1)];
+            int bands = Math.min(ditherBands, height);
+            if (bands <= 1) {
+                dither(inPixels, outPixels, outIndexes, width, height, 0, height, quantizer, table, serpentine);
+            } else {
+                ditherBands(inPixels, outPixels, outIndexes, width, height, bands, quantizer, table, serpentine);
+            }
+        }
+        return table;
+    }
 
-                    outPixels[index] = rgb2;
+    private void ditherBands(int[] inPixels, int[] outPixels, byte[] outIndexes, int width, int height, int bands, Quantizer quantizer, int[] table, boolean serpentine) {
+        int bandHeight = (height + bands - 1) / bands;
+        // Bands do not share any pixel: the kernel diffuses the error into the current row only
+        IntStream.range(0, bands).parallel().forEach(band -> {
+            int start = band * bandHeight;
+            int end = Math.min(start + bandHeight, height);
+            if (start < end)
+                dither(inPixels, outPixels, outIndexes, width, height, start, end, quantizer, table, serpentine);
+        });
+    }
 
-                    int r1 = (rgb1 >> 16) & 0xff;
-                    int g1 = (rgb1 >> 8) & 0xff;
-                    int b1 = rgb1 & 0xff;
-
-                    int r2 = (rgb2 >> 16) & 0xff;
-                    int g2 = (rgb2 >> 8) & 0xff;
-                    int b2 = rgb2 & 0xff;
-
-                    int er = r1-r2;
-                    int eg = g1-g2;
-                    int eb = b1-b2;
-
-                    for (int i = -1; i <= 1; i++) {
-                        int iy = i+y;
-                        if (0 <= iy && iy < height) {
-                            for (int j = -1; j <= 1; j++) {
-                                int jx = j+x;
-                                if (0 <= jx && jx < width) {
-                                    int w;
-                                    if (reverse)
-                                        w = matrix[(i+1)*3-j+1];
-                                    else
-                                        w = matrix[(i+1)*3+j+1];
-                                    if (w != 0) {
-                                        int k = reverse ? index - j : index + j;
-                                        rgb1 = inPixels[k];
-                                        r1 = (rgb1 >> 16) & 0xff;
-                                        g1 = (rgb1 >> 8) & 0xff;
-                                        b1 = rgb1 & 0xff;
-                                        r1 += er * w/sum;
-                                        g1 += eg * w/sum;
-                                        b1 += eb * w/sum;
-                                        inPixels[k] = (PixelUtils.clamp(r1) << 16) | (PixelUtils.clamp(g1) << 8) | PixelUtils.clamp(b1);
-                                    }
+    /**
+     * Dither rows, from fromY to toY, of the given image, into output colors and/or indexes in the color table.
+     */
+    private void dither(int[] inPixels, int[] outPixels, byte[] outIndexes, int width, int height, int fromY, int toY, Quantizer quantizer, int[] table, boolean serpentine) {
+        int index = 0;
+        for (int y = fromY; y < toY; y++) {
+            boolean reverse = serpentine && (y & 1) == 1;
+            int direction;
+            if (reverse) {
+                index = y*width+width-1;
+                direction = -1;
+            } else {
+                index = y*width;
+                direction = 1;
+            }
+            for (int x = 0; x < width; x++) {
+                int rgb1 = inPixels[index];
+                int colorIndex = quantizer.getIndexForColor(rgb1);
+                int rgb2 = table[colorIndex];
+
+                if (outPixels != null)
+                    outPixels[index] = rgb2;
+                if (outIndexes != null)
+                    outIndexes[index] = (byte) colorIndex;
+
+                int r1 = (rgb1 >> 16) & 0xff;
+                int g1 = (rgb1 >> 8) & 0xff;
+                int b1 = rgb1 & 0xff;
+
+                int r2 = (rgb2 >> 16) & 0xff;
+                int g2 = (rgb2 >> 8) & 0xff;
+                int b2 = rgb2 & 0xff;
+
+                int er = r1-r2;
+                int eg = g1-g2;
+                int eb = b1-b2;
+
+                for (int i = -1; i <= 1; i++) {
+                    int iy = i+y;
+                    if (0 <= iy && iy < height) {
+                        for (int j = -1; j <= 1; j++) {
+                            int jx = j+x;
+                            if (0 <= jx && jx < width) {
+                                int w;
+                                if (reverse)
+                                    w = matrix[(i+1)*3-j+1];
+                                else
+                                    w = matrix[(i+1)*3+j+1];
+                                if (w != 0) {
+                                    int k = reverse ? index - j : index + j;
+                                    rgb1 = inPixels[k];
+                                    r1 = (rgb1 >> 16) & 0xff;
+                                    g1 = (rgb1 >> 8) & 0xff;
+                                    b1 = rgb1 & 0xff;
+                                    r1 += er * w/sum;
+                                    g1 += eg * w/sum;
+                                    b1 += eb * w/sum;
+                                    inPixels[k] = (PixelUtils.clamp(r1) << 16) | (PixelUtils.clamp(g1) << 8) | PixelUtils.clamp(b1);
                                 }
                             }
                         }
                     }
-                    index += direction;
                 }
+                index += direction;
             }
         }
     }
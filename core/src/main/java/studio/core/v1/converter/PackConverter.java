@@ -0,0 +1,140 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.converter;
+
+import studio.core.v1.model.StoryPack;
+import studio.core.v1.reader.archive.ArchiveStoryPackReader;
+import studio.core.v1.reader.binary.BinaryStoryPackReader;
+import studio.core.v1.reader.fs.FsStoryPackReader;
+import studio.core.v1.utils.AssetConversionCache;
+import studio.core.v1.utils.PackAssetsCompression;
+import studio.core.v1.utils.TemporaryFileAssetStore;
+import studio.core.v1.writer.archive.ArchiveStoryPackWriter;
+import studio.core.v1.writer.binary.BinaryStoryPackWriter;
+import studio.core.v1.writer.fs.FsStoryPackWriter;
+
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+/*
+Converts packs between the archive (.zip), raw (.pack) and FS (folder) formats, without holding the pack's assets in
+memory. Only the node graph is decoded upfront: assets are read lazily from the source pack, converted a few at a
+time on the transcoding pool, spilled to temporary files in the work folder, and streamed into the target pack.
+ */
+public class PackConverter {
+
+    private static final Logger LOGGER = Logger.getLogger(PackConverter.class.getName());
+
+    // Folder of the temporary files written during conversions
+    private final Path workDirectory;
+    // Optional cache of converted assets
+    private final AssetConversionCache cache;
+
+    public PackConverter(Path workDirectory, AssetConversionCache cache) {
+        this.workDirectory = workDirectory;
+        this.cache = cache;
+    }
+
+    @FunctionalInterface
+    private interface PackConversion<T> {
+        T convert(StoryPack pack, TemporaryFileAssetStore store) throws Exception;
+    }
+
+    // Converts an archive or FS format pack into a raw format pack file
+    public StoryPack toRaw(Path packPath, Path targetFile, boolean allowEnriched) throws Exception {
+        if (isRaw(packPath)) {
+            throw new IllegalArgumentException("Pack is already in raw format");
+        }
+        return convert(packPath, (pack, store) -> {
+            // Uncompress pack assets
+            StoryPack uncompressedPack = pack;
+            if (PackAssetsCompression.hasCompressedAssets(pack)) {
+                LOGGER.info("Uncompressing pack assets");
+                uncompressedPack = PackAssetsCompression.withUncompressedAssets(pack, cache, store);
+            }
+
+            LOGGER.info("Writing raw format pack");
+            try (OutputStream os = Files.newOutputStream(targetFile)) {
+                new BinaryStoryPackWriter().write(uncompressedPack, os, allowEnriched);
+            }
+            return uncompressedPack;
+        });
+    }
+
+    // Converts a raw or FS format pack into an archive format pack file
+    public StoryPack toArchive(Path packPath, Path targetFile) throws Exception {
+        if (isArchive(packPath)) {
+            throw new IllegalArgumentException("Pack is already in archive format");
+        }
+        return convert(packPath, (pack, store) -> {
+            // Compress raw pack assets. FS pack assets are already compressed.
+            StoryPack compressedPack = pack;
+            if (isRaw(packPath)) {
+                LOGGER.info("Compressing pack assets");
+                compressedPack = PackAssetsCompression.withCompressedAssets(pack, cache, store);
+            }
+
+            LOGGER.info("Writing archive format pack");
+            try (OutputStream os = Files.newOutputStream(targetFile)) {
+                new ArchiveStoryPackWriter(Deflater.DEFAULT_COMPRESSION, workDirectory).write(compressedPack, os);
+            }
+            return compressedPack;
+        });
+    }
+
+    // Converts an archive or raw format pack into an FS format pack, written in its own folder in the target folder
+    public StoryPack toFs(Path packPath, Path targetFolder) throws Exception {
+        if (!isArchive(packPath) && !isRaw(packPath)) {
+            throw new IllegalArgumentException("Pack is already in FS format");
+        }
+        return convert(packPath, (pack, store) -> {
+            // Prepare assets (RLE-encoded BMP, audio must already be MP3)
+            LOGGER.info("Converting assets if necessary");
+            StoryPack packWithPreparedAssets = PackAssetsCompression.withPreparedAssetsFirmware2dot4(pack, cache, store);
+
+            LOGGER.info("Writing FS format pack");
+            new FsStoryPackWriter().write(packWithPreparedAssets, targetFolder);
+            return packWithPreparedAssets;
+        });
+    }
+
+    private <T> T convert(Path packPath, PackConversion<T> conversion) throws Exception {
+        // Converted assets only live until the target pack is written
+        try (TemporaryFileAssetStore store = new TemporaryFileAssetStore(workDirectory)) {
+            if (isArchive(packPath)) {
+                LOGGER.info("Reading archive format pack");
+                // Assets are read lazily from the archive, which must stay open until the pack is written
+                try (SeekableByteChannel channel = Files.newByteChannel(packPath)) {
+                    return conversion.convert(new ArchiveStoryPackReader().read(channel), store);
+                }
+            } else if (isRaw(packPath)) {
+                LOGGER.info("Reading raw format pack");
+                // Raw pack file is memory-mapped, assets are not copied until they are converted
+                try (FileChannel channel = FileChannel.open(packPath)) {
+                    return conversion.convert(new BinaryStoryPackReader().read(channel), store);
+                }
+            } else {
+                LOGGER.info("Reading FS format pack");
+                // Cleartext assets are read lazily from the pack folder
+                return conversion.convert(new FsStoryPackReader().read(packPath), store);
+            }
+        }
+    }
+
+    private static boolean isArchive(Path packPath) {
+        return packPath.toString().endsWith(".zip");
+    }
+
+    private static boolean isRaw(Path packPath) {
+        return packPath.toString().endsWith(".pack");
+    }
+}
@@ -6,4 +6,22 @@
 
 package studio.core.v1.model;
 
-public interface Asset {}
+import studio.core.v1.model.asset.AssetSource;
+
+public interface Asset {
+
+    String getMimeType();
+
+    void setMimeType(String mimeType);
+
+    String getName();
+
+    // Content may be read lazily from the source pack: prefer streaming it from the source over getRawData()
+    AssetSource getSource();
+
+    void setSource(AssetSource source);
+
+    byte[] getRawData();
+
+    void setRawData(byte[] rawData);
+}
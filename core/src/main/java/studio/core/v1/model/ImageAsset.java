@@ -6,37 +6,70 @@
 
 package studio.core.v1.model;
 
+import studio.core.v1.model.asset.AssetSource;
+import studio.core.v1.model.asset.ByteArrayAssetSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 public class ImageAsset implements Asset {
 
     private String mimeType;
-    private byte[] rawData;
+    private AssetSource source;
     private String name;
 
     public ImageAsset() {
     }
 
     public ImageAsset(String mimeType, byte[] rawData, String name) {
+        this(mimeType, rawData != null ? new ByteArrayAssetSource(rawData) : null, name);
+    }
+
+    public ImageAsset(String mimeType, AssetSource source, String name) {
         this.mimeType = mimeType;
-        this.rawData = rawData;
+        this.source = source;
         this.name = name;
     }
 
+    @Override
     public String getMimeType() {
         return mimeType;
     }
 
+    @Override
     public void setMimeType(String mimeType) {
         this.mimeType = mimeType;
     }
 
+    @Override
     public byte[] getRawData() {
-        return rawData;
+        if (source == null) {
+            return null;
+        }
+        // Lazy sources are read on each call, and never kept in memory
+        try {
+            return source.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read asset " + name, e);
+        }
     }
 
+    @Override
     public void setRawData(byte[] rawData) {
-        this.rawData = rawData;
+        this.source = rawData != null ? new ByteArrayAssetSource(rawData) : null;
+    }
+
+    @Override
+    public AssetSource getSource() {
+        return source;
+    }
+
+    @Override
+    public void setSource(AssetSource source) {
+        this.source = source;
     }
 
+    @Override
     public String getName() {
         return name;
     }
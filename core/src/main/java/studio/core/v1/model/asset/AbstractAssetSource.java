@@ -0,0 +1,68 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.model.asset;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import studio.core.v1.utils.XXHash64;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+public abstract class AbstractAssetSource implements AssetSource {
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private volatile String sha1Hex;
+    private volatile String dedupKey;
+
+    @Override
+    public String getSha1Hex() {
+        String digest = sha1Hex;
+        if (digest == null) {
+            try {
+                digest = computeSha1Hex();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to compute asset digest", e);
+            }
+            sha1Hex = digest;
+        }
+        return digest;
+    }
+
+    protected String computeSha1Hex() throws IOException {
+        try (InputStream is = openStream()) {
+            return DigestUtils.sha1Hex(is);
+        }
+    }
+
+    @Override
+    public String getDedupKey() {
+        String key = dedupKey;
+        if (key == null) {
+            try {
+                key = Long.toHexString(computeXxHash64()) + "-" + getSize();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to compute asset digest", e);
+            }
+            dedupKey = key;
+        }
+        return key;
+    }
+
+    protected long computeXxHash64() throws IOException {
+        XXHash64 xxHash64 = new XXHash64();
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream is = openStream()) {
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                xxHash64.update(buffer, 0, read);
+            }
+        }
+        return xxHash64.getValue();
+    }
+}
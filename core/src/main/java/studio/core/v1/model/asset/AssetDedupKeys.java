@@ -0,0 +1,32 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.model.asset;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Keys of the distinct contents of a set of assets, e.g. the assets of a pack being written. Sources are told apart by
+their dedup key, and sources with the same dedup key are confirmed to have the same content by their SHA-1 digest,
+which is only computed for such sources. A source whose content collides with another one gets a key of its own, so
+that it is never merged with a different content. Not thread-safe.
+ */
+public class AssetDedupKeys {
+
+    // First source seen with each dedup key
+    private final Map<String, AssetSource> firstSources = new HashMap<>();
+
+    public String keyOf(AssetSource source) {
+        String dedupKey = source.getDedupKey();
+        AssetSource firstSource = firstSources.putIfAbsent(dedupKey, source);
+        if (firstSource == null || firstSource == source || firstSource.getSha1Hex().equals(source.getSha1Hex())) {
+            return dedupKey;
+        }
+        // Same size and xxHash64, different content
+        return dedupKey + "-" + source.getSha1Hex();
+    }
+}
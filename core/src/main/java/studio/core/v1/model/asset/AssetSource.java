@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.model.asset;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/*
+Provides the content of an asset: an in-memory buffer, a zip entry, a region of a file, or a slice of a memory-mapped
+pack file. Lazy sources read the content from the pack they come from each time it is requested, in which case they
+are only valid as long as the underlying pack file is available.
+ */
+public interface AssetSource {
+
+    long getSize();
+
+    InputStream openStream() throws IOException;
+
+    // Read-only view of the content. Sources that are not already backed by a buffer read the whole content.
+    ByteBuffer getByteBuffer() throws IOException;
+
+    // SHA-1 digest of the content, computed once per source
+    String getSha1Hex();
+
+    // Non-cryptographic digest (xxHash64) and size of the content, computed once per source. It is much cheaper than
+    // the SHA-1 digest, but only meant to tell apart contents of the same pack: sources with the same key may still
+    // differ, see AssetDedupKeys.
+    String getDedupKey();
+
+    default byte[] readAllBytes() throws IOException {
+        try (InputStream is = openStream()) {
+            return is.readAllBytes();
+        }
+    }
+
+    default long transferTo(OutputStream outputStream) throws IOException {
+        try (InputStream is = openStream()) {
+            return is.transferTo(outputStream);
+        }
+    }
+}
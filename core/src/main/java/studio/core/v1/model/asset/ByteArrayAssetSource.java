@@ -0,0 +1,62 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.model.asset;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import studio.core.v1.utils.XXHash64;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+public class ByteArrayAssetSource extends AbstractAssetSource {
+
+    private final byte[] data;
+
+    public ByteArrayAssetSource(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public long getSize() {
+        return data.length;
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new ByteArrayInputStream(data);
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+        return ByteBuffer.wrap(data).asReadOnlyBuffer();
+    }
+
+    @Override
+    public byte[] readAllBytes() {
+        // In-memory content is shared, not copied
+        return data;
+    }
+
+    @Override
+    public long transferTo(OutputStream outputStream) throws IOException {
+        outputStream.write(data);
+        return data.length;
+    }
+
+    @Override
+    protected String computeSha1Hex() {
+        return DigestUtils.sha1Hex(data);
+    }
+
+    @Override
+    protected long computeXxHash64() {
+        return XXHash64.hash(data);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.model.asset;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import studio.core.v1.utils.XXHash64;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/*
+Content backed by a (read-only) buffer, e.g. a slice of a memory-mapped pack file. The buffer is never copied,
+except when the content is requested as a byte array.
+ */
+public class ByteBufferAssetSource extends AbstractAssetSource {
+
+    private final ByteBuffer buffer;
+
+    public ByteBufferAssetSource(ByteBuffer buffer) {
+        this.buffer = buffer.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public long getSize() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public InputStream openStream() {
+        return new ByteBufferInputStream(getByteBuffer());
+    }
+
+    @Override
+    public byte[] readAllBytes() {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() {
+        // Each caller gets its own position and limit
+        return buffer.duplicate();
+    }
+
+    @Override
+    protected String computeSha1Hex() {
+        return Hex.encodeHexString(DigestUtils.digest(DigestUtils.getSha1Digest(), getByteBuffer()));
+    }
+
+    @Override
+    protected long computeXxHash64() {
+        return XXHash64.hash(buffer);
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.model.asset;
+
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/*
+Content of a region of a file, read from disk each time it is requested.
+ */
+public class FileRegionAssetSource extends AbstractAssetSource {
+
+    private final Path path;
+    private final long offset;
+    private final long size;
+
+    public FileRegionAssetSource(Path path, long offset, long size) {
+        this.path = path;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        FileChannel channel = FileChannel.open(path);
+        channel.position(offset);
+        // Closing the stream closes the channel
+        return BoundedInputStream.builder()
+                .setInputStream(Channels.newInputStream(channel))
+                .setMaxCount(size)
+                .get();
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.model.asset;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/*
+Content of a zip archive entry, inflated from the archive each time it is requested.
+ */
+public class ZipEntryAssetSource extends AbstractAssetSource {
+
+    private final ZipFile zipFile;
+    private final ZipArchiveEntry entry;
+
+    public ZipEntryAssetSource(ZipFile zipFile, ZipArchiveEntry entry) {
+        this.zipFile = zipFile;
+        this.entry = entry;
+    }
+
+    @Override
+    public long getSize() {
+        return entry.getSize();
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        return zipFile.getInputStream(entry);
+    }
+
+    @Override
+    public ByteBuffer getByteBuffer() throws IOException {
+        return ByteBuffer.wrap(readAllBytes()).asReadOnlyBuffer();
+    }
+
+    public ZipArchiveEntry getEntry() {
+        return entry;
+    }
+}
@@ -9,11 +9,17 @@ package studio.core.v1.reader.archive;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.io.IOUtils;
 import studio.core.v1.Constants;
 import studio.core.v1.model.*;
+import studio.core.v1.model.asset.AssetSource;
+import studio.core.v1.model.asset.ByteArrayAssetSource;
+import studio.core.v1.model.asset.ZipEntryAssetSource;
 import studio.core.v1.model.enriched.EnrichedNodeMetadata;
 import studio.core.v1.model.enriched.EnrichedNodePosition;
 import studio.core.v1.model.enriched.EnrichedNodeType;
@@ -23,6 +29,8 @@ import studio.core.v1.model.metadata.StoryPackMetadata;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.SeekableByteChannel;
 import java.util.*;
 
 public class ArchiveStoryPackReader {
@@ -42,26 +50,7 @@ public class ArchiveStoryPackReader {
             // Story descriptor file: story.json
             if (!entry.isDirectory() && entry.getName().equalsIgnoreCase("story.json")) {
                 hasStoryJsonEntry = true;
-
-                JsonParser parser = new JsonParser();
-                JsonObject root = parser.parse(new InputStreamReader(zis)).getAsJsonObject();
-
-                // Read metadata
-                metadata.setVersion(root.get("version").getAsShort());
-                Optional.ofNullable(root.get("title")).filter(JsonElement::isJsonPrimitive).ifPresent(title ->
-                        metadata.setTitle(title.getAsString())
-                );
-                Optional.ofNullable(root.get("description")).filter(JsonElement::isJsonPrimitive).ifPresent(desc ->
-                        metadata.setDescription(desc.getAsString())
-                );
-                // TODO Thumbnail?
-
-                // Night mode
-                metadata.setNightModeAvailable(Optional.ofNullable(root.get("nightModeAvailable")).map(JsonElement::getAsBoolean).orElse(false));
-
-                // Read first stage node
-                JsonObject mainStageNode = root.getAsJsonArray("stageNodes").get(0).getAsJsonObject();
-                metadata.setUuid(mainStageNode.get("uuid").getAsString());
+                readStoryMetadata(new InputStreamReader(zis), metadata);
             }
             // Pack thumbnail
             else if (!entry.isDirectory() && entry.getName().equalsIgnoreCase("thumbnail.png")) {
@@ -78,6 +67,101 @@ public class ArchiveStoryPackReader {
         return hasStoryJsonEntry ? metadata : null;
     }
 
+    public StoryPackMetadata readMetadata(SeekableByteChannel channel) throws IOException {
+        // Seek straight to the relevant entries through the zip central directory, without reading any asset
+        try (ZipFile zipFile = ZipFile.builder().setSeekableByteChannel(channel).get()) {
+            // Story descriptor file: story.json
+            ZipArchiveEntry storyJsonEntry = findEntryIgnoreCase(zipFile, "story.json");
+            if (storyJsonEntry == null) {
+                return null;
+            }
+
+            // Pack metadata model
+            StoryPackMetadata metadata = new StoryPackMetadata(Constants.PACK_FORMAT_ARCHIVE);
+            try (InputStreamReader reader = new InputStreamReader(zipFile.getInputStream(storyJsonEntry))) {
+                readStoryMetadata(reader, metadata);
+            }
+
+            // Pack thumbnail
+            ZipArchiveEntry thumbnailEntry = findEntryIgnoreCase(zipFile, "thumbnail.png");
+            if (thumbnailEntry != null) {
+                try (InputStream is = zipFile.getInputStream(thumbnailEntry)) {
+                    metadata.setThumbnail(IOUtils.toByteArray(is));
+                }
+            }
+
+            return metadata;
+        }
+    }
+
+    private void readStoryMetadata(Reader reader, StoryPackMetadata metadata) throws IOException {
+        // Stream through the descriptor, whose keys may come in any order. This app writes metadata before the stage
+        // nodes, so reading stops after the first stage node when the version is already known: optional metadata
+        // (description, night mode) are often missing, and waiting for them would tokenize the whole descriptor.
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+        boolean hasVersion = false, hasUuid = false, done = false;
+        jsonReader.beginObject();
+        while (!done && jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case "version":
+                    metadata.setVersion((short) jsonReader.nextInt());
+                    hasVersion = true;
+                    break;
+                case "title":
+                    metadata.setTitle(nextPrimitiveString(jsonReader));
+                    break;
+                case "description":
+                    metadata.setDescription(nextPrimitiveString(jsonReader));
+                    break;
+                // TODO Thumbnail?
+                case "nightModeAvailable":
+                    // Night mode
+                    String nightMode = nextPrimitiveString(jsonReader);
+                    metadata.setNightModeAvailable(Boolean.parseBoolean(nightMode));
+                    break;
+                case "stageNodes":
+                    // Read first stage node
+                    jsonReader.beginArray();
+                    jsonReader.beginObject();
+                    while (jsonReader.hasNext()) {
+                        if ("uuid".equals(jsonReader.nextName())) {
+                            metadata.setUuid(jsonReader.nextString());
+                            hasUuid = true;
+                        } else {
+                            jsonReader.skipValue();
+                        }
+                    }
+                    jsonReader.endObject();
+                    // Other stage nodes are not even tokenized, unless the version is written after them
+                    done = hasVersion && hasUuid;
+                    if (!done) {
+                        while (jsonReader.hasNext()) {
+                            jsonReader.skipValue();
+                        }
+                        jsonReader.endArray();
+                    }
+                    break;
+                default:
+                    jsonReader.skipValue();
+            }
+        }
+        if (!hasVersion || !hasUuid) {
+            throw new IOException("Missing version or stage nodes in story.json");
+        }
+    }
+
+    private String nextPrimitiveString(JsonReader jsonReader) throws IOException {
+        JsonToken token = jsonReader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return jsonReader.nextString();
+        } else if (token == JsonToken.BOOLEAN) {
+            return String.valueOf(jsonReader.nextBoolean());
+        }
+        jsonReader.skipValue();
+        return null;
+    }
+
     public StoryPack read(InputStream inputStream) throws IOException {
 
         // Zip archive contains a json file and separate assets
@@ -87,167 +171,188 @@ public class ArchiveStoryPackReader {
         TreeMap<String, byte[]> assets = new TreeMap<>();
 
         // Story pack model
-        boolean factoryDisabled = false;
-        short version = 0;
-        // Keep stage nodes in the order they appear
-        LinkedHashMap<String, StageNode> stageNodes = new LinkedHashMap<>();
+        StoryPack storyPack = null;
         // Keep asset name to stage nodes map
         Map<String, List<StageNode>> assetToStageNodes = new HashMap<>();
-        // Keep first node
-        StageNode squareOne = null;
-        // Enriched pack metadata
-        EnrichedPackMetadata enrichedPack = null;
-        boolean nightModeAvailable = false;
 
 
         ZipArchiveEntry entry;
         while((entry = zis.getNextEntry()) != null) {
             // Story descriptor file: story.json
             if (!entry.isDirectory() && entry.getName().equalsIgnoreCase("story.json")) {
-                JsonParser parser = new JsonParser();
-                JsonObject root = parser.parse(new InputStreamReader(zis)).getAsJsonObject();
-
-                // Read metadata
-                version = root.get("version").getAsShort();
-                // Read (optional) enriched pack metadata
-                Optional<String> maybeTitle = Optional.ofNullable(root.get("title")).filter(JsonElement::isJsonPrimitive).map(JsonElement::getAsString);
-                Optional<String> maybeDescription = Optional.ofNullable(root.get("description")).filter(JsonElement::isJsonPrimitive).map(JsonElement::getAsString);
-                // TODO Thumbnail?
-                if (maybeTitle.isPresent() || maybeDescription.isPresent()) {
-                    enrichedPack = new EnrichedPackMetadata(maybeTitle.orElse(null), maybeDescription.orElse(null));
-                }
+                storyPack = readStoryDescriptor(new InputStreamReader(zis), assetToStageNodes);
+            }
+            // Separate asset files
+            else if (!entry.isDirectory() && entry.getName().startsWith("assets/")) {
+                assets.put(entry.getName().substring("assets/".length()), IOUtils.toByteArray(zis));
+            }
+        }
 
-                // Night mode
-                nightModeAvailable = Optional.ofNullable(root.get("nightModeAvailable")).map(JsonElement::getAsBoolean).orElse(false);
+        // Update assets in stage nodes
+        for (Map.Entry<String, byte[]> assetEntry : assets.entrySet()) {
+            setAsset(assetEntry.getKey(), new ByteArrayAssetSource(assetEntry.getValue()), assetToStageNodes);
+        }
 
-                // Read action nodes
-                TreeMap<String, ActionNode> actionNodes = new TreeMap<>();
-                Iterator<JsonElement> actionsIter = root.getAsJsonArray("actionNodes").iterator();
-                while (actionsIter.hasNext()) {
-                    JsonObject node = actionsIter.next().getAsJsonObject();
+        zis.close();
 
-                    // Read (optional) enriched node metadata
-                    EnrichedNodeMetadata enrichedNodeMetadata = readEnrichedNodeMetadata(node);
+        if (storyPack == null) {
+            throw new IOException("Missing story.json in archive pack");
+        }
 
-                    actionNodes.put(node.get("id").getAsString(), new ActionNode(enrichedNodeMetadata));
-                }
+        return storyPack;
+    }
 
-                // Read stage nodes
-                Iterator<JsonElement> stagesIter = root.getAsJsonArray("stageNodes").iterator();
-                while (stagesIter.hasNext()) {
-                    JsonObject node = stagesIter.next().getAsJsonObject();
-                    String uuid = node.get("uuid").getAsString();
-                    Transition okTransition = null;
-                    if (node.get("okTransition") != null && node.get("okTransition").isJsonObject()) {
-                        ActionNode actionNode = actionNodes.get(node.getAsJsonObject("okTransition").get("actionNode").getAsString());
-                        okTransition = new Transition(actionNode, node.getAsJsonObject("okTransition").get("optionIndex").getAsShort());
-                    }
-                    Transition homeTransition = null;
-                    if (node.get("homeTransition") != null && node.get("homeTransition").isJsonObject()) {
-                        ActionNode actionNode = actionNodes.get(node.getAsJsonObject("homeTransition").get("actionNode").getAsString());
-                        homeTransition = new Transition(actionNode, node.getAsJsonObject("homeTransition").get("optionIndex").getAsShort());
-                    }
-                    JsonObject controlSettings = node.getAsJsonObject("controlSettings");
-
-                    // Read (optional) enriched node metadata
-                    EnrichedNodeMetadata enrichedNodeMetadata = readEnrichedNodeMetadata(node);
-
-                    StageNode stageNode = new StageNode(
-                            uuid,
-                            null,
-                            null,
-                            okTransition,
-                            homeTransition,
-                            new ControlSettings(
-                                    controlSettings.get("wheel").getAsBoolean(),
-                                    controlSettings.get("ok").getAsBoolean(),
-                                    controlSettings.get("home").getAsBoolean(),
-                                    controlSettings.get("pause").getAsBoolean(),
-                                    controlSettings.get("autoplay").getAsBoolean()
-                            ),
-                            enrichedNodeMetadata
-                    );
-
-                    if (node.get("squareOne") != null && node.get("squareOne").getAsBoolean()) {
-                        squareOne = stageNode;
-                    }
+    public StoryPack read(SeekableByteChannel channel) throws IOException {
+        // Random access through the zip central directory. Asset files are not read here: their content is inflated
+        // from the archive each time it is requested, so the channel must stay open as long as the pack is in use.
+        ZipFile zipFile = ZipFile.builder().setSeekableByteChannel(channel).get();
 
-                    if (node.get("image") != null && !node.get("image").isJsonNull()) {
-                        String imageAssetName = node.get("image").getAsString();
-                        List<StageNode> atsn = assetToStageNodes.getOrDefault(imageAssetName, new ArrayList<>());
-                        atsn.add(stageNode);
-                        assetToStageNodes.put(imageAssetName, atsn);
-                    }
-                    if (node.get("audio") != null && !node.get("audio").isJsonNull()) {
-                        String audioAssetName = node.get("audio").getAsString();
-                        List<StageNode> atsn = assetToStageNodes.getOrDefault(audioAssetName, new ArrayList<>());
-                        atsn.add(stageNode);
-                        assetToStageNodes.put(audioAssetName, atsn);
-                    }
+        // Keep asset name to stage nodes map
+        Map<String, List<StageNode>> assetToStageNodes = new HashMap<>();
 
-                    stageNodes.put(uuid, stageNode);
-                }
+        // Story descriptor file: story.json
+        ZipArchiveEntry storyJsonEntry = findEntryIgnoreCase(zipFile, "story.json");
+        if (storyJsonEntry == null) {
+            throw new IOException("Missing story.json in archive pack");
+        }
+        StoryPack storyPack;
+        try (InputStreamReader reader = new InputStreamReader(zipFile.getInputStream(storyJsonEntry))) {
+            storyPack = readStoryDescriptor(reader, assetToStageNodes);
+        }
 
-                // Link action nodes to stage nodes
-                actionsIter = root.getAsJsonArray("actionNodes").iterator();
-                while (actionsIter.hasNext()) {
-                    JsonObject node = actionsIter.next().getAsJsonObject();
-                    ActionNode actionNode = actionNodes.get(node.get("id").getAsString());
-                    List<StageNode> options = new ArrayList<>();
-                    Iterator<JsonElement> optionsIter = node.getAsJsonArray("options").iterator();
-                    while (optionsIter.hasNext()) {
-                        String stageUuid = optionsIter.next().getAsString();
-                        options.add(stageNodes.get(stageUuid));
-                    }
-                    actionNode.setOptions(options);
+        // Update assets in stage nodes, with lazy sources
+        for (String assetName : assetToStageNodes.keySet()) {
+            ZipArchiveEntry assetEntry = zipFile.getEntry("assets/" + assetName);
+            if (assetEntry != null && !assetEntry.isDirectory()) {
+                setAsset(assetName, new ZipEntryAssetSource(zipFile, assetEntry), assetToStageNodes);
+            }
+        }
+
+        return storyPack;
+    }
+
+    private ZipArchiveEntry findEntryIgnoreCase(ZipFile zipFile, String name) {
+        ZipArchiveEntry entry = zipFile.getEntry(name);
+        if (entry == null) {
+            // Descriptor and thumbnail file names are case-insensitive
+            Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry candidate = entries.nextElement();
+                if (!candidate.isDirectory() && candidate.getName().equalsIgnoreCase(name)) {
+                    return candidate;
                 }
+            }
+        }
+        return entry;
+    }
+
+    private StoryPack readStoryDescriptor(Reader reader, Map<String, List<StageNode>> assetToStageNodes) {
+        // Story pack model
+        boolean factoryDisabled = false;
+        // Keep stage nodes in the order they appear
+        LinkedHashMap<String, StageNode> stageNodes = new LinkedHashMap<>();
+        // Keep first node
+        StageNode squareOne = null;
+        // Enriched pack metadata
+        EnrichedPackMetadata enrichedPack = null;
+
+        JsonParser parser = new JsonParser();
+        JsonObject root = parser.parse(reader).getAsJsonObject();
+
+        // Read metadata
+        short version = root.get("version").getAsShort();
+        // Read (optional) enriched pack metadata
+        Optional<String> maybeTitle = Optional.ofNullable(root.get("title")).filter(JsonElement::isJsonPrimitive).map(JsonElement::getAsString);
+        Optional<String> maybeDescription = Optional.ofNullable(root.get("description")).filter(JsonElement::isJsonPrimitive).map(JsonElement::getAsString);
+        // TODO Thumbnail?
+        if (maybeTitle.isPresent() || maybeDescription.isPresent()) {
+            enrichedPack = new EnrichedPackMetadata(maybeTitle.orElse(null), maybeDescription.orElse(null));
+        }
 
+        // Night mode
+        boolean nightModeAvailable = Optional.ofNullable(root.get("nightModeAvailable")).map(JsonElement::getAsBoolean).orElse(false);
+
+        // Read action nodes
+        TreeMap<String, ActionNode> actionNodes = new TreeMap<>();
+        Iterator<JsonElement> actionsIter = root.getAsJsonArray("actionNodes").iterator();
+        while (actionsIter.hasNext()) {
+            JsonObject node = actionsIter.next().getAsJsonObject();
+
+            // Read (optional) enriched node metadata
+            EnrichedNodeMetadata enrichedNodeMetadata = readEnrichedNodeMetadata(node);
+
+            actionNodes.put(node.get("id").getAsString(), new ActionNode(enrichedNodeMetadata));
+        }
+
+        // Read stage nodes
+        Iterator<JsonElement> stagesIter = root.getAsJsonArray("stageNodes").iterator();
+        while (stagesIter.hasNext()) {
+            JsonObject node = stagesIter.next().getAsJsonObject();
+            String uuid = node.get("uuid").getAsString();
+            Transition okTransition = null;
+            if (node.get("okTransition") != null && node.get("okTransition").isJsonObject()) {
+                ActionNode actionNode = actionNodes.get(node.getAsJsonObject("okTransition").get("actionNode").getAsString());
+                okTransition = new Transition(actionNode, node.getAsJsonObject("okTransition").get("optionIndex").getAsShort());
             }
-            // Separate asset files
-            else if (!entry.isDirectory() && entry.getName().startsWith("assets/")) {
-                assets.put(entry.getName().substring("assets/".length()), IOUtils.toByteArray(zis));
+            Transition homeTransition = null;
+            if (node.get("homeTransition") != null && node.get("homeTransition").isJsonObject()) {
+                ActionNode actionNode = actionNodes.get(node.getAsJsonObject("homeTransition").get("actionNode").getAsString());
+                homeTransition = new Transition(actionNode, node.getAsJsonObject("homeTransition").get("optionIndex").getAsShort());
             }
-        }
+            JsonObject controlSettings = node.getAsJsonObject("controlSettings");
+
+            // Read (optional) enriched node metadata
+            EnrichedNodeMetadata enrichedNodeMetadata = readEnrichedNodeMetadata(node);
+
+            StageNode stageNode = new StageNode(
+                    uuid,
+                    null,
+                    null,
+                    okTransition,
+                    homeTransition,
+                    new ControlSettings(
+                            controlSettings.get("wheel").getAsBoolean(),
+                            controlSettings.get("ok").getAsBoolean(),
+                            controlSettings.get("home").getAsBoolean(),
+                            controlSettings.get("pause").getAsBoolean(),
+                            controlSettings.get("autoplay").getAsBoolean()
+                    ),
+                    enrichedNodeMetadata
+            );
 
-        // Update assets in stage nodes
-        for (Map.Entry<String, byte[]> assetEntry : assets.entrySet()) {
-            String assetName = assetEntry.getKey();
-            int dotIndex = assetName.lastIndexOf(".");
-            String extension = assetName.substring(dotIndex).toLowerCase();
-
-            // Stage nodes explicitly reference their assets' filenames
-            List<StageNode> stageNodesReferencingAsset = assetToStageNodes.get(assetName);
-            if (stageNodesReferencingAsset != null && !stageNodesReferencingAsset.isEmpty()) {
-                for (StageNode stageNode : stageNodesReferencingAsset) {
-                    switch (extension.toLowerCase()) {
-                        case ".bmp":
-                            stageNode.setImage(new ImageAsset("image/bmp", assetEntry.getValue(), assetName));
-                            break;
-                        case ".png":
-                            stageNode.setImage(new ImageAsset("image/png", assetEntry.getValue(), assetName));
-                            break;
-                        case ".jpg":
-                        case ".jpeg":
-                            stageNode.setImage(new ImageAsset("image/jpeg", assetEntry.getValue(), assetName));
-                            break;
-                        case ".wav":
-                            stageNode.setAudio(new AudioAsset("audio/x-wav", assetEntry.getValue(), assetName));
-                            break;
-                        case ".mp3":
-                            stageNode.setAudio(new AudioAsset("audio/mpeg", assetEntry.getValue(), assetName));
-                            break;
-                        case ".ogg":
-                        case ".oga":
-                            stageNode.setAudio(new AudioAsset("audio/ogg", assetEntry.getValue(), assetName));
-                            break;
-                        default:
-                            // Unsupported asset
-                    }
-                }
+            if (node.get("squareOne") != null && node.get("squareOne").getAsBoolean()) {
+                squareOne = stageNode;
+            }
+
+            if (node.get("image") != null && !node.get("image").isJsonNull()) {
+                String imageAssetName = node.get("image").getAsString();
+                List<StageNode> atsn = assetToStageNodes.getOrDefault(imageAssetName, new ArrayList<>());
+                atsn.add(stageNode);
+                assetToStageNodes.put(imageAssetName, atsn);
+            }
+            if (node.get("audio") != null && !node.get("audio").isJsonNull()) {
+                String audioAssetName = node.get("audio").getAsString();
+                List<StageNode> atsn = assetToStageNodes.getOrDefault(audioAssetName, new ArrayList<>());
+                atsn.add(stageNode);
+                assetToStageNodes.put(audioAssetName, atsn);
             }
+
+            stageNodes.put(uuid, stageNode);
         }
 
-        zis.close();
+        // Link action nodes to stage nodes
+        actionsIter = root.getAsJsonArray("actionNodes").iterator();
+        while (actionsIter.hasNext()) {
+            JsonObject node = actionsIter.next().getAsJsonObject();
+            ActionNode actionNode = actionNodes.get(node.get("id").getAsString());
+            List<StageNode> options = new ArrayList<>();
+            Iterator<JsonElement> optionsIter = node.getAsJsonArray("options").iterator();
+            while (optionsIter.hasNext()) {
+                String stageUuid = optionsIter.next().getAsString();
+                options.add(stageNodes.get(stageUuid));
+            }
+            actionNode.setOptions(options);
+        }
 
         // Make sure the first node is actually 'square one'
         List<StageNode> nodes = new ArrayList<>(stageNodes.values());
@@ -259,6 +364,42 @@ public class ArchiveStoryPackReader {
         return new StoryPack(nodes.get(0).getUuid(), factoryDisabled, version, nodes, enrichedPack, nightModeAvailable);
     }
 
+    private void setAsset(String assetName, AssetSource source, Map<String, List<StageNode>> assetToStageNodes) {
+        int dotIndex = assetName.lastIndexOf(".");
+        String extension = assetName.substring(dotIndex).toLowerCase();
+
+        // Stage nodes explicitly reference their assets' filenames
+        List<StageNode> stageNodesReferencingAsset = assetToStageNodes.get(assetName);
+        if (stageNodesReferencingAsset != null && !stageNodesReferencingAsset.isEmpty()) {
+            for (StageNode stageNode : stageNodesReferencingAsset) {
+                switch (extension) {
+                    case ".bmp":
+                        stageNode.setImage(new ImageAsset("image/bmp", source, assetName));
+                        break;
+                    case ".png":
+                        stageNode.setImage(new ImageAsset("image/png", source, assetName));
+                        break;
+                    case ".jpg":
+                    case ".jpeg":
+                        stageNode.setImage(new ImageAsset("image/jpeg", source, assetName));
+                        break;
+                    case ".wav":
+                        stageNode.setAudio(new AudioAsset("audio/x-wav", source, assetName));
+                        break;
+                    case ".mp3":
+                        stageNode.setAudio(new AudioAsset("audio/mpeg", source, assetName));
+                        break;
+                    case ".ogg":
+                    case ".oga":
+                        stageNode.setAudio(new AudioAsset("audio/ogg", source, assetName));
+                        break;
+                    default:
+                        // Unsupported asset
+                }
+            }
+        }
+    }
+
     private EnrichedNodeMetadata readEnrichedNodeMetadata(JsonObject node) {
         Optional<String> maybeName = Optional.ofNullable(node.get("name")).filter(JsonElement::isJsonPrimitive).map(JsonElement::getAsString);
         Optional<String> maybeType = Optional.ofNullable(node.get("type")).filter(JsonElement::isJsonPrimitive).map(JsonElement::getAsString);
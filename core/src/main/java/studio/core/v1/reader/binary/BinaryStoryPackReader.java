@@ -8,6 +8,7 @@ package studio.core.v1.reader.binary;
 
 import studio.core.v1.Constants;
 import studio.core.v1.model.*;
+import studio.core.v1.model.asset.ByteBufferAssetSource;
 import studio.core.v1.model.enriched.EnrichedNodeMetadata;
 import studio.core.v1.model.enriched.EnrichedNodePosition;
 import studio.core.v1.model.enriched.EnrichedNodeType;
@@ -17,6 +18,9 @@ import studio.core.v1.model.metadata.StoryPackMetadata;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -57,93 +61,77 @@ public class BinaryStoryPackReader {
     }
 
     public StoryPack read(InputStream inputStream) throws IOException {
-        DataInputStream dis = new DataInputStream(inputStream);
+        return read(ByteBuffer.wrap(inputStream.readAllBytes()));
+    }
+
+    public StoryPack read(FileChannel channel) throws IOException {
+        // The mapping stays valid after the channel is closed, and assets are exposed as slices of this mapping
+        if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException("Raw pack file is too large to be mapped: " + channel.size() + " bytes");
+        }
+        return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+
+    private StoryPack read(ByteBuffer buffer) {
+        // Sectors are decoded at their absolute offsets, the buffer position is never moved
+        ByteBuffer bb = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
 
         // Read sector 1
-        short stages = dis.readShort();
-        boolean factoryDisabled = dis.readByte() == 1;
-        short version = dis.readShort();
+        short stages = bb.getShort(0);
+        boolean factoryDisabled = bb.get(2) == 1;
+        short version = bb.getShort(3);
 
         // Read (optional) enriched pack metadata
         EnrichedPackMetadata enrichedPack = null;
-        dis.skipBytes(Constants.BINARY_ENRICHED_METADATA_SECTOR_1_ALIGNMENT_PADDING);
-        Optional<String> maybeTitle = readString(dis, Constants.BINARY_ENRICHED_METADATA_TITLE_TRUNCATE);
-        Optional<String> maybeDescription = readString(dis, Constants.BINARY_ENRICHED_METADATA_DESCRIPTION_TRUNCATE);
+        int enrichedPackOffset = 5 + Constants.BINARY_ENRICHED_METADATA_SECTOR_1_ALIGNMENT_PADDING;
+        Optional<String> maybeTitle = readString(bb, enrichedPackOffset, Constants.BINARY_ENRICHED_METADATA_TITLE_TRUNCATE);
+        Optional<String> maybeDescription = readString(bb, enrichedPackOffset + Constants.BINARY_ENRICHED_METADATA_TITLE_TRUNCATE*2, Constants.BINARY_ENRICHED_METADATA_DESCRIPTION_TRUNCATE);
         // TODO Thumbnail?
         if (maybeTitle.isPresent() || maybeDescription.isPresent()) {
             enrichedPack = new EnrichedPackMetadata(maybeTitle.orElse(null), maybeDescription.orElse(null));
         }
 
-        dis.skipBytes(Constants.SECTOR_SIZE - 5
-                - Constants.BINARY_ENRICHED_METADATA_SECTOR_1_ALIGNMENT_PADDING
-                - Constants.BINARY_ENRICHED_METADATA_TITLE_TRUNCATE*2
-                - Constants.BINARY_ENRICHED_METADATA_DESCRIPTION_TRUNCATE*2); // Skip to end of sector
-
         // Read stage nodes (`stages` sectors, starting from sector 2)
         TreeMap<SectorAddr, StageNode> stageNodes = new TreeMap<>();
         TreeMap<AssetAddr, List<StageNode>> stagesWithImage = new TreeMap<>();         // StageNodes must be updated with the actual ImageAsset
         TreeMap<AssetAddr, List<StageNode>> stagesWithAudio = new TreeMap<>();         // StageNodes must be updated with the actual AudioAsset
         TreeMap<SectorAddr, List<Transition>> transitionsWithAction = new TreeMap<>(); // Transitions must be updated with the actual ActionNode
-        Set<SectorAddr> actionNodesToVisit = new TreeSet<>();   // Stage nodes / transitions reference action nodes, which are read after all stage nodes
-        Set<AssetAddr> assetAddrsToVisit = new TreeSet<>();     // Stage nodes reference assets, which are read after all nodes
         for (int i = 0; i < stages; i++) {
             // Reading sector i+2
+            int sectorOffset = sectorOffset(i);
 
             // UUID
-            long uuidLowBytes = dis.readLong();
-            long uuidHighBytes = dis.readLong();
+            long uuidLowBytes = bb.getLong(sectorOffset);
+            long uuidHighBytes = bb.getLong(sectorOffset + 8);
             String uuid = (new UUID(uuidLowBytes, uuidHighBytes)).toString();
 
             // Image asset
-            int imageOffset = dis.readInt();
-            int imageSize = dis.readInt();
-            AssetAddr imageAssetAddr = null;
-            if (imageOffset != -1) {
-                // Asset must be visited
-                imageAssetAddr = new AssetAddr(imageOffset, imageSize, AssetType.IMAGE);
-                assetAddrsToVisit.add(imageAssetAddr);
-            }
+            int imageOffset = bb.getInt(sectorOffset + 16);
+            int imageSize = bb.getInt(sectorOffset + 20);
+            AssetAddr imageAssetAddr = imageOffset != -1 ? new AssetAddr(imageOffset, imageSize, AssetType.IMAGE) : null;
 
             // Audio asset
-            int audioOffset = dis.readInt();
-            int audioSize = dis.readInt();
-            AssetAddr audioAssetAddr = null;
-            if (audioOffset != -1) {
-                // Asset must be visited
-                audioAssetAddr = new AssetAddr(audioOffset, audioSize, AssetType.AUDIO);
-                assetAddrsToVisit.add(audioAssetAddr);
-            }
+            int audioOffset = bb.getInt(sectorOffset + 24);
+            int audioSize = bb.getInt(sectorOffset + 28);
+            AssetAddr audioAssetAddr = audioOffset != -1 ? new AssetAddr(audioOffset, audioSize, AssetType.AUDIO) : null;
 
             // Transitions
-            short okTransitionOffset = dis.readShort();
-            short okTransitionCount = dis.readShort();
-            short okTransitionIndex = dis.readShort();
-            SectorAddr okActionNodeAddr = null;
-            if (okTransitionOffset != -1) {
-                // Action node must be visited
-                okActionNodeAddr = new SectorAddr(okTransitionOffset);
-                actionNodesToVisit.add(okActionNodeAddr);
-            }
-            short homeTransitionOffset = dis.readShort();
-            short homeTransitionCount = dis.readShort();
-            short homeTransitionIndex = dis.readShort();
-            SectorAddr homeActionNodeAddr = null;
-            if (homeTransitionOffset != -1) {
-                // Action node must be visited
-                homeActionNodeAddr = new SectorAddr(homeTransitionOffset);
-                actionNodesToVisit.add(homeActionNodeAddr);
-            }
+            short okTransitionOffset = bb.getShort(sectorOffset + 32);
+            short okTransitionIndex = bb.getShort(sectorOffset + 36);
+            SectorAddr okActionNodeAddr = okTransitionOffset != -1 ? new SectorAddr(okTransitionOffset) : null;
+            short homeTransitionOffset = bb.getShort(sectorOffset + 38);
+            short homeTransitionIndex = bb.getShort(sectorOffset + 42);
+            SectorAddr homeActionNodeAddr = homeTransitionOffset != -1 ? new SectorAddr(homeTransitionOffset) : null;
 
             // Control settings
-            boolean wheelEnabled = dis.readShort() == 1;
-            boolean okEnabled = dis.readShort() == 1;
-            boolean homeEnabled = dis.readShort() == 1;
-            boolean pauseEnabled = dis.readShort() == 1;
-            boolean autoJumpEnabled = dis.readShort() == 1;
+            boolean wheelEnabled = bb.getShort(sectorOffset + 44) == 1;
+            boolean okEnabled = bb.getShort(sectorOffset + 46) == 1;
+            boolean homeEnabled = bb.getShort(sectorOffset + 48) == 1;
+            boolean pauseEnabled = bb.getShort(sectorOffset + 50) == 1;
+            boolean autoJumpEnabled = bb.getShort(sectorOffset + 52) == 1;
 
             // Read (optional) enriched node metadata
-            dis.skipBytes(Constants.BINARY_ENRICHED_METADATA_STAGE_NODE_ALIGNMENT_PADDING);
-            EnrichedNodeMetadata enrichedNodeMetadata = readEnrichedNodeMetadata(dis);
+            EnrichedNodeMetadata enrichedNodeMetadata = readEnrichedNodeMetadata(bb, sectorOffset + 54 + Constants.BINARY_ENRICHED_METADATA_STAGE_NODE_ALIGNMENT_PADDING);
 
             // Build stage node
             SectorAddr address = new SectorAddr(i);
@@ -162,132 +150,95 @@ public class BinaryStoryPackReader {
 
             // Assets will be updated when they are read
             if (imageAssetAddr != null) {
-                List<StageNode> swi = stagesWithImage.getOrDefault(imageAssetAddr, new ArrayList<>());
-                swi.add(stageNode);
-                stagesWithImage.put(imageAssetAddr, swi);
+                stagesWithImage.computeIfAbsent(imageAssetAddr, addr -> new ArrayList<>()).add(stageNode);
             }
             if (audioAssetAddr != null) {
-                List<StageNode> swa = stagesWithAudio.getOrDefault(audioAssetAddr, new ArrayList<>());
-                swa.add(stageNode);
-                stagesWithAudio.put(audioAssetAddr, swa);
+                stagesWithAudio.computeIfAbsent(audioAssetAddr, addr -> new ArrayList<>()).add(stageNode);
             }
             // Action nodes will be updated when they are read
             if (okActionNodeAddr != null) {
-                List<Transition> twa = transitionsWithAction.getOrDefault(okActionNodeAddr, new ArrayList<>());
-                twa.add(okTransition);
-                transitionsWithAction.put(okActionNodeAddr, twa);
+                transitionsWithAction.computeIfAbsent(okActionNodeAddr, addr -> new ArrayList<>()).add(okTransition);
             }
             if (homeActionNodeAddr != null) {
-                List<Transition> twa = transitionsWithAction.getOrDefault(homeActionNodeAddr, new ArrayList<>());
-                twa.add(homeTransition);
-                transitionsWithAction.put(homeActionNodeAddr, twa);
+                transitionsWithAction.computeIfAbsent(homeActionNodeAddr, addr -> new ArrayList<>()).add(homeTransition);
             }
-
-            // Skip to end of sector
-            dis.skipBytes(Constants.SECTOR_SIZE - 54
-                    - Constants.BINARY_ENRICHED_METADATA_STAGE_NODE_ALIGNMENT_PADDING
-                    - Constants.BINARY_ENRICHED_METADATA_NODE_NAME_TRUNCATE*2 - 16 - 1 - 4);
         }
 
-        // Read action nodes
-        // We are positioned at the end of sector stages+1
-        int currentOffset = stages;
-        Iterator<SectorAddr> actionNodesIter = actionNodesToVisit.iterator();
-        while (actionNodesIter.hasNext()) {
-            // Sector to read
-            SectorAddr actionNodeAddr = actionNodesIter.next();
-            // Skip to the beginning of the sector, if needed
-            while (actionNodeAddr.getOffset() > currentOffset) {
-                dis.skipBytes(Constants.SECTOR_SIZE);
-                currentOffset++;
-            }
+        // Read action nodes, directly from their sector
+        for (Map.Entry<SectorAddr, List<Transition>> actionNodeEntry : transitionsWithAction.entrySet()) {
+            int sectorOffset = sectorOffset(actionNodeEntry.getKey().getOffset());
 
             List<StageNode> options = new ArrayList<>();
-            short optionAddr = dis.readShort();
+            int optionOffset = sectorOffset;
+            short optionAddr = bb.getShort(optionOffset);
             while (optionAddr != 0) {
                 options.add(stageNodes.get(new SectorAddr(optionAddr)));
-                optionAddr = dis.readShort();
+                optionOffset += 2;
+                optionAddr = bb.getShort(optionOffset);
             }
 
             // Read (optional) enriched node metadata
             int alignmentOverflow = 2*(options.size()) % Constants.BINARY_ENRICHED_METADATA_ACTION_NODE_ALIGNMENT;
             int alignmentPadding = Constants.BINARY_ENRICHED_METADATA_ACTION_NODE_ALIGNMENT_PADDING + (alignmentOverflow > 0 ? Constants.BINARY_ENRICHED_METADATA_ACTION_NODE_ALIGNMENT - alignmentOverflow : 0);
-            dis.skipBytes(alignmentPadding - 2);    // No need to skip the last 2 bytes that were read in the previous loop
-            EnrichedNodeMetadata enrichedNodeMetadata = readEnrichedNodeMetadata(dis);
+            EnrichedNodeMetadata enrichedNodeMetadata = readEnrichedNodeMetadata(bb, sectorOffset + 2*(options.size()) + alignmentPadding);
 
             // Update action on transitions referencing this sector
             ActionNode actionNode = new ActionNode(options, enrichedNodeMetadata);
-            transitionsWithAction.get(actionNodeAddr).forEach(transition -> transition.setActionNode(actionNode));
-
-            // Skip to end of sector
-            dis.skipBytes(Constants.SECTOR_SIZE - (2*(options.size()+1))
-                    - (alignmentPadding - 2)
-                    - Constants.BINARY_ENRICHED_METADATA_NODE_NAME_TRUNCATE*2 - 16 - 1 - 4);
-            currentOffset++;
+            actionNodeEntry.getValue().forEach(transition -> transition.setActionNode(actionNode));
         }
 
-        // Read assets
-        Iterator<AssetAddr> assetAddrsIter = assetAddrsToVisit.iterator();
-        while (assetAddrsIter.hasNext()) {
-            // First sector to read
-            AssetAddr assetAddr = assetAddrsIter.next();
-            // Skip to the beginning of the sector, if needed
-            while (assetAddr.getOffset() > currentOffset) {
-                dis.skipBytes(Constants.SECTOR_SIZE);
-                currentOffset++;
-            }
-            // Read all bytes
-            byte[] assetBytes = new byte[Constants.SECTOR_SIZE * assetAddr.getSize()];
-            dis.read(assetBytes, 0, assetBytes.length);
-
-            // Update asset on stage nodes referencing this sector
-            switch (assetAddr.getType()) {
-                case AUDIO:
-                    AudioAsset audioAsset = new AudioAsset("audio/x-wav", assetBytes, "0x" + Integer.toHexString(assetAddr.getOffset()));
-                    stagesWithAudio.get(assetAddr).forEach(stageNode -> stageNode.setAudio(audioAsset));
-                    break;
-                case IMAGE:
-                    ImageAsset imageAsset = new ImageAsset("image/bmp", assetBytes, "0x" + Integer.toHexString(assetAddr.getOffset()));
-                    stagesWithImage.get(assetAddr).forEach(stageNode -> stageNode.setImage(imageAsset));
-                    break;
-            }
-
-            currentOffset += assetAddr.getSize();
+        // Read assets, as slices of the buffer
+        for (Map.Entry<AssetAddr, List<StageNode>> imageEntry : stagesWithImage.entrySet()) {
+            AssetAddr assetAddr = imageEntry.getKey();
+            ImageAsset imageAsset = new ImageAsset("image/bmp", readAsset(bb, assetAddr), "0x" + Integer.toHexString(assetAddr.getOffset()));
+            imageEntry.getValue().forEach(stageNode -> stageNode.setImage(imageAsset));
+        }
+        for (Map.Entry<AssetAddr, List<StageNode>> audioEntry : stagesWithAudio.entrySet()) {
+            AssetAddr assetAddr = audioEntry.getKey();
+            AudioAsset audioAsset = new AudioAsset("audio/x-wav", readAsset(bb, assetAddr), "0x" + Integer.toHexString(assetAddr.getOffset()));
+            audioEntry.getValue().forEach(stageNode -> stageNode.setAudio(audioAsset));
         }
-
-        dis.close();
 
         return new StoryPack(stageNodes.get(new SectorAddr(0)).getUuid(), factoryDisabled, version, List.copyOf(stageNodes.values()), enrichedPack, false);
     }
 
-    private Optional<String> readString(DataInputStream dis, int maxChars) throws IOException {
+    private int sectorOffset(int sectorAddr) {
+        // Sector addresses do not account for sector 1 (pack metadata)
+        return (sectorAddr + 1) * Constants.SECTOR_SIZE;
+    }
+
+    private ByteBufferAssetSource readAsset(ByteBuffer bb, AssetAddr assetAddr) {
+        // Assets always span whole sectors
+        int assetOffset = sectorOffset(assetAddr.getOffset());
+        ByteBuffer slice = bb.duplicate();
+        slice.limit(assetOffset + Constants.SECTOR_SIZE * assetAddr.getSize());
+        slice.position(assetOffset);
+        return new ByteBufferAssetSource(slice);
+    }
+
+    private Optional<String> readString(ByteBuffer bb, int offset, int maxChars) {
         byte[] bytes = new byte[maxChars*2];
-        dis.read(bytes);
-        String str = new String(bytes, StandardCharsets.UTF_16);
-        int firstNullChar = str.indexOf("\u0000");
-        return firstNullChar == 0
-                ? Optional.empty()
-                : firstNullChar == -1
-                    ? Optional.of(str)
-                    : Optional.of(str.substring(0, firstNullChar));
+        bb.duplicate().position(offset).get(bytes);
+        return decodeString(bytes);
     }
 
-    private EnrichedNodeMetadata readEnrichedNodeMetadata(DataInputStream dis) throws IOException {
-        Optional<String> maybeName = readString(dis, Constants.BINARY_ENRICHED_METADATA_NODE_NAME_TRUNCATE);
+    private EnrichedNodeMetadata readEnrichedNodeMetadata(ByteBuffer bb, int offset) {
+        Optional<String> maybeName = readString(bb, offset, Constants.BINARY_ENRICHED_METADATA_NODE_NAME_TRUNCATE);
+        offset += Constants.BINARY_ENRICHED_METADATA_NODE_NAME_TRUNCATE*2;
         Optional<String> maybeGroupId = Optional.empty();
-        long groupIdLowBytes = dis.readLong();
-        long groupIdHighBytes = dis.readLong();
+        long groupIdLowBytes = bb.getLong(offset);
+        long groupIdHighBytes = bb.getLong(offset + 8);
         if (groupIdLowBytes != 0 || groupIdHighBytes != 0) {
             maybeGroupId = Optional.of((new UUID(groupIdLowBytes, groupIdHighBytes)).toString());
         }
         Optional<EnrichedNodeType> maybeType = Optional.empty();
-        byte nodeTypeByte = dis.readByte();
+        byte nodeTypeByte = bb.get(offset + 16);
         if (nodeTypeByte != 0x00) {
             maybeType = Optional.ofNullable(EnrichedNodeType.fromCode(nodeTypeByte));
         }
         Optional<EnrichedNodePosition> maybePosition = Optional.empty();
-        short positionX = dis.readShort();
-        short positionY = dis.readShort();
+        short positionX = bb.getShort(offset + 17);
+        short positionY = bb.getShort(offset + 19);
         if (positionX != 0 || positionY != 0) {
             maybePosition = Optional.of(new EnrichedNodePosition(positionX, positionY));
         }
@@ -301,4 +252,20 @@ public class BinaryStoryPackReader {
         }
         return null;
     }
+
+    private Optional<String> readString(DataInputStream dis, int maxChars) throws IOException {
+        byte[] bytes = new byte[maxChars*2];
+        dis.read(bytes);
+        return decodeString(bytes);
+    }
+
+    private Optional<String> decodeString(byte[] bytes) {
+        String str = new String(bytes, StandardCharsets.UTF_16);
+        int firstNullChar = str.indexOf("\u0000");
+        return firstNullChar == 0
+                ? Optional.empty()
+                : firstNullChar == -1
+                    ? Optional.of(str)
+                    : Optional.of(str.substring(0, firstNullChar));
+    }
 }
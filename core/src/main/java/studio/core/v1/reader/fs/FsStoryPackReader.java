@@ -8,8 +8,10 @@ package studio.core.v1.reader.fs;
 
 import studio.core.v1.Constants;
 import studio.core.v1.model.*;
+import studio.core.v1.model.asset.AssetSource;
+import studio.core.v1.model.asset.ByteArrayAssetSource;
+import studio.core.v1.model.asset.FileRegionAssetSource;
 import studio.core.v1.model.metadata.StoryPackMetadata;
-import studio.core.v1.utils.BytesUtils;
 import studio.core.v1.utils.XXTEACipher;
 
 import java.io.DataInputStream;
@@ -152,7 +154,7 @@ public class FsStoryPackReader {
                 byte[] imagePath = Arrays.copyOfRange(riContent, imageAssetIndexInRI*12, imageAssetIndexInRI*12+12);   // Each entry takes 12 bytes
                 String path = new String(imagePath, StandardCharsets.UTF_8);
                 // Read image file
-                byte[] rfContent = readCipheredFile(new File(packFolder, IMAGE_FOLDER+path.replaceAll("\\\\", "/")).toPath(), isCleartext);
+                AssetSource rfContent = readAssetFile(new File(packFolder, IMAGE_FOLDER+path.replaceAll("\\\\", "/")).toPath(), isCleartext);
                 image = new ImageAsset("image/bmp", rfContent, path);
             }
             AudioAsset audio = null;
@@ -161,7 +163,7 @@ public class FsStoryPackReader {
                 byte[] audioPath = Arrays.copyOfRange(siContent, soundAssetIndexInSI*12, soundAssetIndexInSI*12+12);    // Each entry takes 12 bytes
                 String path = new String(audioPath, StandardCharsets.UTF_8);
                 // Read audio file
-                byte[] sfContent = readCipheredFile(new File(packFolder, SOUND_FOLDER+path.replaceAll("\\\\", "/")).toPath(), isCleartext);
+                AssetSource sfContent = readAssetFile(new File(packFolder, SOUND_FOLDER+path.replaceAll("\\\\", "/")).toPath(), isCleartext);
                 audio = new AudioAsset("audio/mpeg", sfContent, path);
             }
 
@@ -227,22 +229,23 @@ public class FsStoryPackReader {
         return isCleartext;
     }
 
+    private AssetSource readAssetFile(Path path, boolean isCleartext) throws IOException {
+        // Cleartext assets are read lazily from the pack folder
+        if (isCleartext) {
+            return new FileRegionAssetSource(path, 0, Files.size(path));
+        }
+        return new ByteArrayAssetSource(readCipheredFile(path, false));
+    }
+
     private byte[] readCipheredFile(Path path, boolean isCleartext) throws IOException {
         byte[] content = Files.readAllBytes(path);
         return isCleartext ? content : decipherFirstBlockCommonKey(content);
     }
 
+    // Deciphers the first block in place
     private byte[] decipherFirstBlockCommonKey(byte[] data) {
-        byte[] block = Arrays.copyOfRange(data, 0, Math.min(512, data.length));
-        int[] dataInt = BytesUtils.toIntArray(block, ByteOrder.LITTLE_ENDIAN);
-        int[] decryptedInt = XXTEACipher.btea(dataInt, -(Math.min(128, data.length/4)), BytesUtils.toIntArray(XXTEACipher.COMMON_KEY, ByteOrder.BIG_ENDIAN));
-        byte[] decryptedBlock = BytesUtils.toByteArray(decryptedInt, ByteOrder.LITTLE_ENDIAN);
-        ByteBuffer bb = ByteBuffer.allocate(data.length);
-        bb.put(decryptedBlock);
-        if (data.length > 512) {
-            bb.put(Arrays.copyOfRange(data, 512, data.length));
-        }
-        return bb.array();
+        XXTEACipher.decipherCommonKey(ByteBuffer.wrap(data), 512);
+        return data;
     }
 
 }
@@ -0,0 +1,172 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+On-disk cache of converted assets, addressed by the digest of the source content, the target format and the encoder
+parameters. The cache is bounded in size: least recently used entries are evicted first. Recency is kept in the
+files' last modified time, so that it survives restarts.
+ */
+public class AssetConversionCache {
+
+    private static final Logger LOGGER = Logger.getLogger(AssetConversionCache.class.getName());
+
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+
+    @FunctionalInterface
+    public interface Conversion {
+        byte[] convert() throws Exception;
+    }
+
+    private final Path directory;
+    private final long maxSize;
+
+    // Entries sizes by key, in access order (eldest first). Guarded by this.
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalSize = 0L;
+
+    public AssetConversionCache(Path directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        Files.createDirectories(directory);
+        loadEntries();
+    }
+
+    // Returns the cached result of the conversion, or runs the conversion and caches its result
+    public byte[] getOrConvert(String sourceSha1Hex, String conversionKey, Conversion conversion) throws Exception {
+        String key = DigestUtils.sha1Hex(sourceSha1Hex + "|" + conversionKey);
+        byte[] cached = get(key);
+        if (cached != null) {
+            LOGGER.fine("Using cached conversion " + conversionKey + " of asset " + sourceSha1Hex);
+            return cached;
+        }
+        byte[] converted = conversion.convert();
+        put(key, converted);
+        return converted;
+    }
+
+    public long getTotalSize() {
+        synchronized (this) {
+            return totalSize;
+        }
+    }
+
+    private byte[] get(String key) {
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        Path entryPath = entryPath(key);
+        try {
+            byte[] data = Files.readAllBytes(entryPath);
+            Files.setLastModifiedTime(entryPath, FileTime.fromMillis(System.currentTimeMillis()));
+            return data;
+        } catch (NoSuchFileException e) {
+            // Removed from outside
+            remove(key);
+            return null;
+        } catch (IOException e) {
+            LOGGER.warning("Failed to read cached conversion " + key + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void put(String key, byte[] data) {
+        if (data.length > maxSize) {
+            return;
+        }
+        Path entryPath = entryPath(key);
+        try {
+            // Write to a temporary file first, so that a partially written entry is never read
+            Files.createDirectories(entryPath.getParent());
+            Path tmpPath = Files.createTempFile(entryPath.getParent(), key, TMP_FILE_SUFFIX);
+            Files.write(tmpPath, data);
+            Files.move(tmpPath, entryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warning("Failed to cache conversion " + key + ": " + e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            Long previousSize = entries.put(key, (long) data.length);
+            totalSize += data.length - (previousSize != null ? previousSize : 0L);
+            evict();
+        }
+    }
+
+    private synchronized void remove(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalSize -= size;
+        }
+    }
+
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalSize > maxSize && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            try {
+                Files.deleteIfExists(entryPath(eldest.getKey()));
+            } catch (IOException e) {
+                LOGGER.warning("Failed to evict cached conversion " + eldest.getKey() + ": " + e.getMessage());
+                continue;
+            }
+            LOGGER.fine("Evicted cached conversion " + eldest.getKey());
+            totalSize -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private Path entryPath(String key) {
+        // Spread entries over sub-folders named after the first two digits of the key
+        return directory.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private synchronized void loadEntries() throws IOException {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory, 2)) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        Map<Path, FileTime> lastModifiedTimes = new LinkedHashMap<>();
+        for (Path file : files) {
+            if (file.getFileName().toString().endsWith(TMP_FILE_SUFFIX)) {
+                // Leftover of an interrupted write
+                Files.deleteIfExists(file);
+            } else {
+                lastModifiedTimes.put(file, Files.getLastModifiedTime(file));
+            }
+        }
+        // Least recently used first
+        files = lastModifiedTimes.keySet().stream()
+                .sorted(Comparator.comparing(lastModifiedTimes::get))
+                .collect(Collectors.toList());
+        for (Path file : files) {
+            long size = Files.size(file);
+            entries.put(file.getFileName().toString(), size);
+            totalSize += size;
+        }
+        evict();
+        LOGGER.fine("Loaded " + entries.size() + " cached conversion(s), " + totalSize + " bytes");
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class AssetConversionException extends Exception {
+
+    // Failure cause by asset name, in pack order
+    private final Map<String, Throwable> failures;
+
+    public AssetConversionException(Map<String, Throwable> failures) {
+        super("Failed to convert " + failures.size() + " asset(s): " + String.join(", ", failures.keySet()),
+                failures.values().iterator().next());
+        this.failures = Collections.unmodifiableMap(failures);
+        failures.values().stream().skip(1).forEach(this::addSuppressed);
+    }
+
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+}
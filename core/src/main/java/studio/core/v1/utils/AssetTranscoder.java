@@ -0,0 +1,102 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import studio.core.v1.model.Asset;
+import studio.core.v1.model.asset.AssetDedupKeys;
+import studio.core.v1.model.asset.AssetSource;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/*
+Converts the assets of a pack concurrently. Assets are deduplicated by content digest, so that each distinct asset is
+converted only once, on a pool bounded by the number of available processors and shared by all conversions.
+ */
+public class AssetTranscoder {
+
+    private static final Logger LOGGER = Logger.getLogger(AssetTranscoder.class.getName());
+
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(PARALLELISM, new TranscoderThreadFactory());
+
+    @FunctionalInterface
+    public interface Conversion {
+        // Must not modify the asset: results are written back to the nodes once all conversions are done
+        AssetSource convert(Asset asset) throws Exception;
+    }
+
+    public static int getParallelism() {
+        return PARALLELISM;
+    }
+
+    // Returns the converted source of each given asset, assets with the same content sharing the same converted source
+    public static Map<Asset, AssetSource> convertDistinct(List<? extends Asset> assets, Conversion conversion) throws AssetConversionException, InterruptedException {
+        // Collect distinct assets, in pack order. The same asset instance may be referenced by several nodes.
+        AssetDedupKeys dedupKeys = new AssetDedupKeys();
+        Map<Asset, String> assetHashes = new IdentityHashMap<>();
+        Map<String, Asset> distinctAssets = new LinkedHashMap<>();
+        for (Asset asset : assets) {
+            String assetHash = assetHashes.computeIfAbsent(asset, a -> dedupKeys.keyOf(a.getSource()));
+            distinctAssets.putIfAbsent(assetHash, asset);
+        }
+        LOGGER.fine("Converting " + distinctAssets.size() + " distinct asset(s) out of " + assets.size() + " on " + PARALLELISM + " thread(s)");
+
+        // Submit all conversions before waiting for any of them
+        Map<String, Future<AssetSource>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, Asset> entry : distinctAssets.entrySet()) {
+            Asset asset = entry.getValue();
+            futures.put(entry.getKey(), EXECUTOR.submit(() -> conversion.convert(asset)));
+        }
+
+        Map<String, AssetSource> converted = new LinkedHashMap<>();
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<String, Future<AssetSource>> entry : futures.entrySet()) {
+                try {
+                    converted.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    Asset asset = distinctAssets.get(entry.getKey());
+                    String assetName = asset.getName() != null && !failures.containsKey(asset.getName()) ? asset.getName() : entry.getKey();
+                    LOGGER.warning("Failed to convert asset `" + assetName + "`: " + e.getCause());
+                    failures.put(assetName, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.values().forEach(future -> future.cancel(true));
+            throw e;
+        }
+        if (!failures.isEmpty()) {
+            throw new AssetConversionException(failures);
+        }
+        Map<Asset, AssetSource> convertedAssets = new IdentityHashMap<>();
+        assetHashes.forEach((asset, assetHash) -> convertedAssets.put(asset, converted.get(assetHash)));
+        return convertedAssets;
+    }
+
+    private static class TranscoderThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "asset-transcoder-" + threadNumber.getAndIncrement());
+            // Do not prevent the JVM from exiting
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -6,22 +6,40 @@
 
 package studio.core.v1.utils;
 
-import de.sciss.jump3r.lowlevel.LameEncoder;
-import de.sciss.jump3r.mp3.MPEGMode;
-
 import javax.sound.sampled.*;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class AudioConversion {
 
     public static final float WAVE_SAMPLE_RATE = 32000.0f;
-    public static final float OGG_SAMPLE_RATE = 44100.0f;
-    public static final float MP3_SAMPLE_RATE = 44100.0f;
+    public static final float OGG_SAMPLE_RATE = VorbisEncoder.DEFAULT_SAMPLE_RATE;
+    public static final float OGG_QUALITY = VorbisEncoder.DEFAULT_QUALITY;
+    public static final float MP3_SAMPLE_RATE = MP3Encoder.DEFAULT_SAMPLE_RATE;
+    public static final int MP3_QUALITY = MP3Encoder.DEFAULT_QUALITY;
     public static final int BITSIZE = 16;
     public static final int MP3_BITSIZE = 32;
     public static final int CHANNELS = 1;
 
+    private static final int WAVE_HEADER_SIZE = 44;
+    // Sizes in the header are unsigned 32-bits integers, kept positive here
+    private static final long MAX_WAVE_DATA_LENGTH = Integer.MAX_VALUE - WAVE_HEADER_SIZE;
+    // Size of the buffer PCM data is streamed through
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private static final VorbisEncoder OGG_ENCODER = new VorbisEncoder((int) OGG_SAMPLE_RATE, OGG_QUALITY);
+    private static final MP3Encoder MP3_ENCODER = new MP3Encoder((int) MP3_SAMPLE_RATE, MP3_QUALITY, true);
 
     public static byte[] oggToWave(byte[] oggData) throws Exception {
         return anyToWave(oggData);
@@ -32,7 +50,68 @@ public class AudioConversion {
     }
 
     public static byte[] anyToWave(byte[] data) throws Exception {
-        AudioInputStream inputAudio = AudioSystem.getAudioInputStream(new ByteArrayInputStream(data));
+        try (AudioInputStream pcm32000 = toWavePcm(new ByteArrayInputStream(data))) {
+            AudioFormat format = pcm32000.getFormat();
+            long frameLength = pcm32000.getFrameLength();
+            // Buffer is sized for the whole wave when its length is known, so that it is neither grown nor trimmed
+            WaveBuffer output = new WaveBuffer(frameLength != AudioSystem.NOT_SPECIFIED ? (int) Math.min(WAVE_HEADER_SIZE + frameLength * format.getFrameSize(), MAX_WAVE_DATA_LENGTH) : data.length);
+            output.write(waveHeader(format, 0L).array());
+            long dataLength = transfer(pcm32000, output, MAX_WAVE_DATA_LENGTH);
+            output.setHeader(waveHeader(format, dataLength));
+            return output.toByteArray();
+        }
+    }
+
+    // Converts to the device's wave format, streamed to the channel from its current position. The header is written
+    // first with placeholder sizes, which are set once the PCM data is written. Returns the number of bytes written.
+    public static long anyToWave(InputStream input, SeekableByteChannel output) throws Exception {
+        try (AudioInputStream pcm32000 = toWavePcm(input)) {
+            long start = output.position();
+            writeFully(output, waveHeader(pcm32000.getFormat(), 0L));
+            long dataLength = transfer(pcm32000, output);
+            long end = output.position();
+            output.position(start);
+            writeFully(output, waveHeader(pcm32000.getFormat(), dataLength));
+            output.position(end);
+            return end - start;
+        }
+    }
+
+    // Converts to the device's wave format, streamed to the output stream. The header comes first, so the length of
+    // the PCM data must be known upfront: when the converters cannot tell it (e.g. when the sample rate changes), the
+    // PCM data is spooled to a temporary file first. Returns the number of bytes written.
+    public static long anyToWave(InputStream input, OutputStream output) throws Exception {
+        try (AudioInputStream pcm32000 = toWavePcm(input)) {
+            AudioFormat format = pcm32000.getFormat();
+            long frameLength = pcm32000.getFrameLength();
+            if (frameLength != AudioSystem.NOT_SPECIFIED) {
+                long dataLength = frameLength * format.getFrameSize();
+                output.write(waveHeader(format, dataLength).array());
+                long written = transfer(pcm32000, output, dataLength);
+                // Pad with silence if the converter output less than expected
+                for (; written < dataLength; written++) {
+                    output.write(0);
+                }
+                return WAVE_HEADER_SIZE + dataLength;
+            }
+            Path spool = Files.createTempFile("wave", ".pcm");
+            try {
+                long dataLength;
+                try (OutputStream spoolOutput = Files.newOutputStream(spool)) {
+                    dataLength = transfer(pcm32000, spoolOutput, Long.MAX_VALUE);
+                }
+                output.write(waveHeader(format, dataLength).array());
+                Files.copy(spool, output);
+                return WAVE_HEADER_SIZE + dataLength;
+            } finally {
+                Files.deleteIfExists(spool);
+            }
+        }
+    }
+
+    private static AudioInputStream toWavePcm(InputStream input) throws Exception {
+        // Audio readers need mark/reset to detect the format
+        AudioInputStream inputAudio = AudioSystem.getAudioInputStream(input.markSupported() ? input : new BufferedInputStream(input));
 
         // First, convert to PCM
         AudioFormat pcmFormat = new AudioFormat(
@@ -56,38 +135,108 @@ public class AudioConversion {
                 WAVE_SAMPLE_RATE,
                 false
         );
-        AudioInputStream pcm32000 = AudioSystem.getAudioInputStream(pcm32000Format, pcm);
+        return AudioSystem.getAudioInputStream(pcm32000Format, pcm);
+    }
 
-        // Read the whole stream in a byte array because length must be known
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        baos.writeBytes(pcm32000.readAllBytes());
-        AudioInputStream waveStream = new AudioInputStream(new ByteArrayInputStream(baos.toByteArray()), pcm32000Format, baos.toByteArray().length);
+    // Canonical 44-bytes RIFF/WAVE header of little-endian PCM data
+    private static ByteBuffer waveHeader(AudioFormat format, long dataLength) {
+        if (dataLength > MAX_WAVE_DATA_LENGTH) {
+            throw new IllegalArgumentException("Wave data is too long: " + dataLength + " bytes");
+        }
+        ByteBuffer header = ByteBuffer.allocate(WAVE_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) (WAVE_HEADER_SIZE - 8 + dataLength));
+        header.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        header.put("fmt ".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(16);
+        // PCM
+        header.putShort((short) 1);
+        header.putShort((short) format.getChannels());
+        header.putInt((int) format.getSampleRate());
+        header.putInt((int) format.getSampleRate() * format.getFrameSize());
+        header.putShort((short) format.getFrameSize());
+        header.putShort((short) format.getSampleSizeInBits());
+        header.put("data".getBytes(StandardCharsets.US_ASCII));
+        header.putInt((int) dataLength);
+        return header.flip();
+    }
 
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        AudioSystem.write(waveStream, AudioFileFormat.Type.WAVE, output);
-        return output.toByteArray();
+    private static long transfer(InputStream input, WritableByteChannel output) throws IOException {
+        byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+        ByteBuffer bb = ByteBuffer.wrap(buffer);
+        long total = 0;
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            bb.clear().limit(read);
+            writeFully(output, bb);
+            total += read;
+        }
+        return total;
+    }
+
+    private static long transfer(InputStream input, OutputStream output, long maxLength) throws IOException {
+        byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while (total < maxLength && (read = input.read(buffer, 0, (int) Math.min(buffer.length, maxLength - total))) >= 0) {
+            output.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    // In-memory wave, whose header is set once the PCM data is written
+    private static class WaveBuffer extends ByteArrayOutputStream {
+
+        private WaveBuffer(int size) {
+            super(size);
+        }
+
+        private void setHeader(ByteBuffer header) {
+            header.get(buf, 0, WAVE_HEADER_SIZE);
+        }
+
+        @Override
+        public synchronized byte[] toByteArray() {
+            return count == buf.length ? buf : super.toByteArray();
+        }
+    }
+
+    private static void writeFully(WritableByteChannel output, ByteBuffer bb) throws IOException {
+        while (bb.hasRemaining()) {
+            output.write(bb);
+        }
     }
 
     public static byte[] waveToOgg(byte[] waveData) throws Exception {
+        return waveToOgg(waveData, OGG_ENCODER);
+    }
+
+    public static byte[] waveToOgg(byte[] waveData, VorbisEncoder encoder) throws Exception {
         AudioInputStream inputAudio = AudioSystem.getAudioInputStream(new ByteArrayInputStream(waveData));
 
-        // First, convert sample rate to 44100Hz (the only rate that is supported by the vorbis encoding library)
-        AudioFormat pcm44100Format = new AudioFormat(
+        // First, convert sample rate to the encoder's (44100Hz is the only rate that the vorbis encoding library has
+        // tuned settings for)
+        AudioFormat pcmEncoderFormat = new AudioFormat(
                 AudioFormat.Encoding.PCM_SIGNED,
-                OGG_SAMPLE_RATE,
+                encoder.getSampleRate(),
                 BITSIZE,
                 CHANNELS,
                 CHANNELS * 2,
-                OGG_SAMPLE_RATE,
+                encoder.getSampleRate(),
                 false
         );
-        AudioInputStream pcm44100 = AudioSystem.getAudioInputStream(pcm44100Format, inputAudio);
+        AudioInputStream pcmEncoder = AudioSystem.getAudioInputStream(pcmEncoderFormat, inputAudio);
 
-        return VorbisEncoder.encode(pcm44100);
+        return encoder.encodePcm(pcmEncoder);
     }
 
     public static byte[] anyToMp3(byte[] data) throws Exception {
-            AudioInputStream inputAudio = AudioSystem.getAudioInputStream(new ByteArrayInputStream(data));
+        return anyToMp3(data, MP3_ENCODER);
+    }
+
+    public static byte[] anyToMp3(byte[] data, MP3Encoder encoder) throws Exception {
+        AudioInputStream inputAudio = AudioSystem.getAudioInputStream(new ByteArrayInputStream(data));
 
         // First, convert to PCM
         AudioFormat pcmFormat = new AudioFormat(
@@ -101,47 +250,7 @@ public class AudioConversion {
         );
         AudioInputStream pcm = AudioSystem.getAudioInputStream(pcmFormat, inputAudio);
 
-        // Then, convert to mono **and oversample** (apparently the input stream in always empty unless the sample rate changes)
-        AudioFormat pcmOverSampledFormat = new AudioFormat(
-                AudioFormat.Encoding.PCM_SIGNED,
-                inputAudio.getFormat().getSampleRate() * 2,
-                BITSIZE,
-                CHANNELS,
-                CHANNELS * 2,
-                inputAudio.getFormat().getSampleRate() * 2,
-                false
-        );
-        AudioInputStream pcmOverSampled = AudioSystem.getAudioInputStream(pcmOverSampledFormat, pcm);
-
-        // Finally, convert sample rate to 44100Hz and sample bitsize to 32 bits
-        AudioFormat pcm44100Format = new AudioFormat(
-                AudioFormat.Encoding.PCM_FLOAT,
-                MP3_SAMPLE_RATE,
-                MP3_BITSIZE,
-                CHANNELS,
-                CHANNELS * 4,
-                MP3_SAMPLE_RATE,
-                false
-        );
-        AudioInputStream pcm44100 = AudioSystem.getAudioInputStream(pcm44100Format, pcmOverSampled);
-
-        LameEncoder encoder = new LameEncoder(pcm44100.getFormat(), LameEncoder.BITRATE_AUTO, MPEGMode.MONO.ordinal(), 4, true);
-
-        ByteArrayOutputStream mp3 = new ByteArrayOutputStream();
-        byte[] inputBuffer = new byte[encoder.getPCMBufferSize()];
-        byte[] outputBuffer = new byte[encoder.getPCMBufferSize()];
-
-        int bytesRead;
-        int bytesWritten;
-
-        while (0 < (bytesRead = pcm44100.read(inputBuffer))) {
-            bytesWritten = encoder.encodeBuffer(inputBuffer, 0, bytesRead, outputBuffer);
-            mp3.write(outputBuffer, 0, bytesWritten);
-        }
-        bytesWritten = encoder.encodeFinish(outputBuffer);
-        mp3.write(outputBuffer, 0, bytesWritten);
-
-        encoder.close();
-        return mp3.toByteArray();
+        // Then, downmix to mono, resample to 44100Hz and encode
+        return encoder.encodePcm(pcm);
     }
 }
@@ -0,0 +1,251 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+Converts decoded 16-bits little-endian PCM, of any sample rate and channels count, to mono float samples at another
+sample rate, in a single pass. Channels are averaged, then samples are resampled with a polyphase windowed-sinc
+(Kaiser) low-pass filter, whose cutoff is below the Nyquist frequency of the lower of both rates. Input is pushed in
+chunks of any size: samples are output as soon as all the input samples they depend on are known.
+ */
+public class AudioResampler {
+
+    // Zero crossings of the sinc on each side of the center, at the lower rate
+    private static final int ZERO_CROSSINGS = 32;
+    // Cutoff frequency, relative to the Nyquist frequency of the lower rate
+    private static final double CUTOFF = 0.95;
+    // Kaiser window shape (about 80dB of stopband attenuation)
+    private static final double KAISER_BETA = 8.0;
+    // Rates whose ratio needs more phases use the nearest of this many phases
+    private static final int MAX_PHASES = 1024;
+
+    // Filters depend on the sample rates only, and are computed once for each pair of rates
+    private static final Map<Long, Filter> FILTERS = new ConcurrentHashMap<>();
+
+    private final int channels;
+    // Output sample rate is interpolation / decimation times the input sample rate
+    private final long interpolation;
+    private final long decimation;
+    private final int phases;
+    private final int halfTaps;
+    // Filter coefficients of each phase, for 2 * halfTaps consecutive input samples
+    private final float[] coefficients;
+
+    // Mono input samples, from input sample bufferStart. The first halfTaps samples of the stream are zeros.
+    private float[] buffer;
+    private int buffered = 0;
+    private long bufferStart = 0;
+    private long inputSamples = 0;
+    // Next output sample
+    private long outputSamples = 0;
+    // Byte of a sample split between two chunks, or -1
+    private int pendingByte = -1;
+    private final int[] pendingFrame;
+    private int pendingSamples = 0;
+
+    private float[] output = new float[0];
+
+    public AudioResampler(float sourceSampleRate, int channels, float targetSampleRate) {
+        if (channels < 1) {
+            throw new IllegalArgumentException("Invalid channels count: " + channels);
+        }
+        long sourceRate = Math.round(sourceSampleRate);
+        long targetRate = Math.round(targetSampleRate);
+        if (sourceRate <= 0 || targetRate <= 0) {
+            throw new IllegalArgumentException("Invalid sample rates: " + sourceSampleRate + " -> " + targetSampleRate);
+        }
+        Filter filter = FILTERS.computeIfAbsent(sourceRate << 32 | targetRate, key -> new Filter(sourceRate, targetRate));
+        this.channels = channels;
+        this.interpolation = filter.interpolation;
+        this.decimation = filter.decimation;
+        this.phases = filter.phases;
+        this.halfTaps = filter.halfTaps;
+        this.coefficients = filter.coefficients;
+        this.pendingFrame = new int[channels];
+        this.buffer = new float[4 * halfTaps];
+        this.buffered = halfTaps;
+    }
+
+    // Output samples of the last call to process or flush
+    public float[] output() {
+        return output;
+    }
+
+    // Pushes 16-bits little-endian interleaved PCM, and returns the number of output samples now available
+    public int process(byte[] pcm, int offset, int length) {
+        int end = offset + length;
+        ensureCapacity(buffered + length / (2 * channels) + 1);
+        int i = offset;
+        // Sample split between the previous chunk and this one
+        if (pendingByte >= 0 && i < end) {
+            pushSample((short) ((pcm[i++] << 8) | pendingByte));
+            pendingByte = -1;
+        }
+        if (pendingSamples == 0) {
+            // Fast paths, whole frames
+            if (channels == 1) {
+                for (; i + 1 < end; i += 2) {
+                    buffer[buffered++] = (short) ((pcm[i + 1] << 8) | (pcm[i] & 0xff)) / 32768f;
+                }
+            } else if (channels == 2) {
+                for (; i + 3 < end; i += 4) {
+                    int left = (short) ((pcm[i + 1] << 8) | (pcm[i] & 0xff));
+                    int right = (short) ((pcm[i + 3] << 8) | (pcm[i + 2] & 0xff));
+                    buffer[buffered++] = (left + right) / 65536f;
+                }
+            }
+            inputSamples = bufferStart + buffered - halfTaps;
+        }
+        for (; i + 1 < end; i += 2) {
+            pushSample((short) ((pcm[i + 1] << 8) | (pcm[i] & 0xff)));
+        }
+        if (i < end) {
+            pendingByte = pcm[i] & 0xff;
+        }
+        return resample(false);
+    }
+
+    // Outputs the last samples, once all input has been pushed
+    public int flush() {
+        return resample(true);
+    }
+
+    private void pushSample(int sample) {
+        pendingFrame[pendingSamples++] = sample;
+        if (pendingSamples == channels) {
+            int sum = 0;
+            for (int s : pendingFrame) {
+                sum += s;
+            }
+            ensureCapacity(buffered + 1);
+            buffer[buffered++] = sum / (32768f * channels);
+            inputSamples++;
+            pendingSamples = 0;
+        }
+    }
+
+    private int resample(boolean last) {
+        long outputEnd;
+        if (last) {
+            // Output covers the whole input: pad with zeros after it
+            outputEnd = (inputSamples * interpolation + decimation - 1) / decimation;
+            ensureCapacity(buffered + 2 * halfTaps);
+            Arrays.fill(buffer, buffered, buffered + 2 * halfTaps, 0f);
+        } else {
+            // Output samples whose last tap (base + 2 * halfTaps, with the leading zeros) is available
+            long maxBase = bufferStart + buffered - 2 * halfTaps - 1;
+            outputEnd = maxBase < 0 ? 0 : ((maxBase + 1) * interpolation + decimation - 1) / decimation;
+        }
+        int count = (int) Math.max(0, outputEnd - outputSamples);
+        if (output.length < count) {
+            output = new float[count];
+        }
+        int taps = 2 * halfTaps;
+        for (int n = 0; n < count; n++, outputSamples++) {
+            long position = outputSamples * decimation;
+            // Input sample just before the output sample (shifted by the leading zeros), and phase between the two
+            long base = position / interpolation;
+            int phase = (int) (phases == interpolation ? position % interpolation : (position % interpolation) * phases / interpolation);
+            int first = (int) (base + 1 - bufferStart);
+            int coefficient = phase * taps;
+            float sample = 0f;
+            for (int tap = 0; tap < taps; tap++) {
+                sample += buffer[first + tap] * coefficients[coefficient + tap];
+            }
+            output[n] = Math.max(-1f, Math.min(1f, sample));
+        }
+        // Drop input samples no output sample depends on anymore
+        long nextFirst = (outputSamples * decimation) / interpolation + 1;
+        int drop = (int) Math.min(buffered, Math.max(0, nextFirst - bufferStart));
+        if (drop > 0 && !last) {
+            System.arraycopy(buffer, drop, buffer, 0, buffered - drop);
+            buffered -= drop;
+            bufferStart += drop;
+        }
+        return count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (buffer.length < capacity) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    private static double sinc(double x) {
+        if (x == 0) {
+            return 1;
+        }
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    // Modified Bessel function of the first kind, order 0
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double halfX = x / 2;
+        for (int k = 1; k < 50; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+            if (term < sum * 1e-12) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static class Filter {
+        private final long interpolation;
+        private final long decimation;
+        private final int phases;
+        private final int halfTaps;
+        private final float[] coefficients;
+
+        private Filter(long sourceRate, long targetRate) {
+            long gcd = gcd(sourceRate, targetRate);
+            this.interpolation = targetRate / gcd;
+            this.decimation = sourceRate / gcd;
+            this.phases = (int) Math.min(interpolation, MAX_PHASES);
+
+            // Cutoff, in cycles per input sample
+            double ratio = Math.min(1.0, (double) targetRate / sourceRate);
+            double cutoff = 0.5 * CUTOFF * ratio;
+            this.halfTaps = (int) Math.ceil(ZERO_CROSSINGS / ratio);
+            this.coefficients = new float[phases * 2 * halfTaps];
+            double kaiserNorm = besselI0(KAISER_BETA);
+            for (int phase = 0; phase < phases; phase++) {
+                // Position of the output sample between input samples halfTaps - 1 and halfTaps of the taps
+                double fraction = (double) phase / phases;
+                double sum = 0;
+                for (int tap = 0; tap < 2 * halfTaps; tap++) {
+                    double x = tap - (halfTaps - 1) - fraction;
+                    double window = x / halfTaps;
+                    double weight = Math.abs(window) >= 1 ? 0 : 2 * cutoff * sinc(2 * cutoff * x) * besselI0(KAISER_BETA * Math.sqrt(1 - window * window)) / kaiserNorm;
+                    coefficients[phase * 2 * halfTaps + tap] = (float) weight;
+                    sum += weight;
+                }
+                // Unity gain for constant signals
+                for (int tap = 0; tap < 2 * halfTaps; tap++) {
+                    coefficients[phase * 2 * halfTaps + tap] /= sum;
+                }
+            }
+        }
+    }
+}
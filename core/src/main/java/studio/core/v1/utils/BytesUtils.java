@@ -8,31 +8,30 @@ package studio.core.v1.utils;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
 
 public class BytesUtils {
 
     public static int[] toIntArray(byte[] data, ByteOrder endianness) {
-        ByteBuffer bb = ByteBuffer.wrap(data);
-        bb.order(endianness);
-        List<Integer> ints = new ArrayList<>();
-        for (int i=0; i<data.length/4; i++) {
-            ints.add(bb.getInt());
-        }
-        return ints.stream().mapToInt(i->i).toArray();
+        int[] ints = new int[data.length/4];
+        ByteBuffer.wrap(data).order(endianness).asIntBuffer().get(ints);
+        return ints;
     }
 
     public static byte[] toByteArray(int[] data, ByteOrder endianness) {
         ByteBuffer bb = ByteBuffer.allocate(data.length*4);
-        bb.order(endianness);
-        for (int i : data) {
-            bb.putInt(i);
-        }
+        bb.order(endianness).asIntBuffer().put(data);
         return bb.array();
     }
 
+    // Reverses the bytes of each 32-bits word. Trailing bytes that do not make a whole word are dropped.
     public static byte[] reverseEndianness(byte[] data) {
-        return toByteArray(toIntArray(data, ByteOrder.LITTLE_ENDIAN), ByteOrder.BIG_ENDIAN);
+        byte[] reversed = new byte[data.length/4*4];
+        for (int i=0; i<reversed.length; i+=4) {
+            reversed[i] = data[i+3];
+            reversed[i+1] = data[i+2];
+            reversed[i+2] = data[i+1];
+            reversed[i+3] = data[i];
+        }
+        return reversed;
     }
 }
@@ -0,0 +1,24 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import studio.core.v1.model.asset.AssetSource;
+import studio.core.v1.model.asset.ByteArrayAssetSource;
+
+import java.io.IOException;
+
+/*
+Holds the output of asset conversions until the converted pack is written.
+ */
+@FunctionalInterface
+public interface ConvertedAssetStore {
+
+    // Converted assets are kept in memory
+    ConvertedAssetStore IN_MEMORY = ByteArrayAssetSource::new;
+
+    AssetSource store(byte[] data) throws IOException;
+}
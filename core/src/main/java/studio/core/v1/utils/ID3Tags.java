@@ -14,18 +14,24 @@ public class ID3Tags {
 
     private static final Logger LOGGER = Logger.getLogger(ID3Tags.class.getName());
 
-    private static final int ID3V1_SIZE = 128;
+    static final int ID3V1_SIZE = 128;
     private static final int ID3V2_HEADER_SIZE = 10;
     private static final int ID3V2_SIZE_OFFSET = 6;
 
 
     public static boolean hasID3v1Tag(byte[] mp3Data) {
+        return hasID3v1Tag(ByteBuffer.wrap(mp3Data));
+    }
+
+    public static boolean hasID3v1Tag(ByteBuffer mp3Buffer) {
         // Look for ID3v1 tag at end of file
-        ByteBuffer mp3Buffer = ByteBuffer.wrap(mp3Data);
-        mp3Buffer.position(mp3Data.length - ID3V1_SIZE);
-        byte char1 = mp3Buffer.get();
-        byte char2 = mp3Buffer.get();
-        byte char3 = mp3Buffer.get();
+        int tagOffset = mp3Buffer.limit() - ID3V1_SIZE;
+        if (tagOffset < 0) {
+            return false;
+        }
+        byte char1 = mp3Buffer.get(tagOffset);
+        byte char2 = mp3Buffer.get(tagOffset + 1);
+        byte char3 = mp3Buffer.get(tagOffset + 2);
         return (char1 == 0x54 && char2 == 0x41 && char3 == 0x47);   // "TAG"
     }
 
@@ -39,25 +45,37 @@ public class ID3Tags {
     }
 
     public static boolean hasID3v2Tag(byte[] mp3Data) {
+        return hasID3v2Tag(ByteBuffer.wrap(mp3Data));
+    }
+
+    public static boolean hasID3v2Tag(ByteBuffer mp3Buffer) {
         // Look for ID3v2 tag at beginning of file
-        ByteBuffer mp3Buffer = ByteBuffer.wrap(mp3Data);
-        byte char1 = mp3Buffer.get();
-        byte char2 = mp3Buffer.get();
-        byte char3 = mp3Buffer.get();
+        if (mp3Buffer.limit() < 3) {
+            return false;
+        }
+        byte char1 = mp3Buffer.get(0);
+        byte char2 = mp3Buffer.get(1);
+        byte char3 = mp3Buffer.get(2);
         return (char1 == 0x49 && char2 == 0x44 && char3 == 0x33);   // "ID3"
     }
 
+    // Size of the ID3v2 tag at beginning of file, including its header
+    public static int getID3v2TagSize(ByteBuffer mp3Buffer) {
+        if (!hasID3v2Tag(mp3Buffer) || mp3Buffer.limit() < ID3V2_HEADER_SIZE) {
+            return 0;
+        }
+        byte size1 = mp3Buffer.get(ID3V2_SIZE_OFFSET);
+        byte size2 = mp3Buffer.get(ID3V2_SIZE_OFFSET + 1);
+        byte size3 = mp3Buffer.get(ID3V2_SIZE_OFFSET + 2);
+        byte size4 = mp3Buffer.get(ID3V2_SIZE_OFFSET + 3);
+        int size = ((size1 & 0x7f) << 21) | ((size2 & 0x7f) << 14) | ((size3 & 0x7f) << 7) | (size4 & 0x7f);
+        return Math.min(size + ID3V2_HEADER_SIZE, mp3Buffer.limit());
+    }
+
     public static byte[] removeID3v2Tag(byte[] mp3Data) {
         if (hasID3v2Tag(mp3Data)) {
             // Read tag size and remove first <n> bytes
-            ByteBuffer mp3Buffer = ByteBuffer.wrap(mp3Data);
-            mp3Buffer.position(ID3V2_SIZE_OFFSET);
-            byte size1 = mp3Buffer.get();
-            byte size2 = mp3Buffer.get();
-            byte size3 = mp3Buffer.get();
-            byte size4 = mp3Buffer.get();
-            int size = ((size1 & 0x7f) << 21) | ((size2 & 0x7f) << 14) | ((size3 & 0x7f) << 7) | (size4 & 0x7f);
-            size += ID3V2_HEADER_SIZE;
+            int size = getID3v2TagSize(ByteBuffer.wrap(mp3Data));
             LOGGER.fine("Removing ID3v2 tag at beginning of file (" + size + " bytes).");
             return Arrays.copyOfRange(mp3Data, size, mp3Data.length);
         }
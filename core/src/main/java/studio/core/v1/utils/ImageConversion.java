@@ -8,38 +8,50 @@ package studio.core.v1.utils;
 
 import com.jhlabs.image.QuantizeFilter;
 
-import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.IndexColorModel;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 public class ImageConversion {
 
     private static final String BITMAP_FORMAT = "BMP";
     private static final String PNG_FORMAT = "PNG";
 
-    private static final String BITMAP_RLE4_COMPRESSION = "BI_RLE4";
+    // Pixels of each band of large images dithered in parallel. Device-sized images (320x240) fit in a single band:
+    // pack conversions already convert them concurrently. Only images converted at their original size are split.
+    private static final int DITHER_BAND_PIXELS = 256 * 1024;
 
     public static byte[] anyToBitmap(byte[] data) throws IOException {
         return convertImage(data, BITMAP_FORMAT);
     }
 
+    public static byte[] anyToBitmap(byte[] data, ImageResampler.Filter deviceFitFilter) throws IOException {
+        return convertImage(data, BITMAP_FORMAT, deviceFitFilter);
+    }
+
     public static byte[] bitmapToPng(byte[] bmpData) throws IOException {
         return convertImage(bmpData, PNG_FORMAT);
     }
 
+    public static byte[] anyToPng(byte[] data, ImageResampler.Filter deviceFitFilter) throws IOException {
+        return convertImage(data, PNG_FORMAT, deviceFitFilter);
+    }
+
     public static byte[] convertImage(byte[] data, String format) throws IOException {
+        return convertImage(data, format, null);
+    }
+
+    // Images larger than the device's screen are scaled down with the given filter, unless it is null
+    public static byte[] convertImage(byte[] data, String format, ImageResampler.Filter deviceFitFilter) throws IOException {
         BufferedImage inputImage = ImageIO.read(new ByteArrayInputStream(data));
         // Redraw image to remove potential alpha channel
         BufferedImage redrawn = redrawImage(inputImage);
+        if (deviceFitFilter != null) {
+            redrawn = ImageResampler.fitToDevice(redrawn, deviceFitFilter);
+        }
         ByteArrayOutputStream output = new ByteArrayOutputStream();
         ImageIO.write(redrawn, format, output);
         if (output.size() == 0) {
@@ -59,85 +71,45 @@ public class ImageConversion {
     }
 
     public static byte[] anyToRLECompressedBitmap(byte[] data) throws IOException {
-        BufferedImage inputImage = ImageIO.read(new ByteArrayInputStream(data));
-        // Redraw image to remove potential alpha channel, and to used indexed colors
-        BufferedImage redrawn = redrawIndexedImage(inputImage);
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        ImageWriter writer = ImageIO.getImageWritersByFormatName(BITMAP_FORMAT).next();
-        ImageWriteParam writeParam = writer.getDefaultWriteParam();
-        writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-        writeParam.setCompressionType(BITMAP_RLE4_COMPRESSION);
-        writer.setOutput(ImageIO.createImageOutputStream(output));
-        writer.write(null, new IIOImage(redrawn, null, null), writeParam);
-        if (output.size() == 0) {
-            throw new IOException("Failed to convert image");
+        return anyToRLECompressedBitmap(data, null);
+    }
+
+    // Images larger than the device's screen are scaled down with the given filter, unless it is null
+    public static byte[] anyToRLECompressedBitmap(byte[] data, ImageResampler.Filter deviceFitFilter) throws IOException {
+        BufferedImage inputImage = removeAlpha(ImageIO.read(new ByteArrayInputStream(data)));
+        if (deviceFitFilter != null) {
+            inputImage = ImageResampler.fitToDevice(inputImage, deviceFitFilter);
         }
-        // BMPImageWriter outputs wrong padding on absolute-mode chunks that needs to be fixed
-        return fixRLE4Padding(output.toByteArray());
+        // Quantize image to 16 colors, then write palette indexes as RLE4
+        byte[] indexes = new byte[inputImage.getWidth() * inputImage.getHeight()];
+        int[] palette = quantize(inputImage, indexes);
+        return RLE4BitmapEncoder.encode(indexes, inputImage.getWidth(), inputImage.getHeight(), palette);
     }
 
-    private static byte[] fixRLE4Padding(byte[] image) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ByteBuffer bb = ByteBuffer.wrap(image);
-        // Copy header
-        for (int i=0; i<0x76; i++) {
-            baos.write(bb.get());
+    // Stages of anyToRLECompressedBitmap, for images that are already decoded
+
+    public static BufferedImage removeAlpha(BufferedImage inputImage) {
+        if (!inputImage.getColorModel().hasAlpha()) {
+            return inputImage;
         }
-        do {
-            // Copy 2-bytes chunk
-            byte b1 = bb.get();
-            byte b2 = bb.get();
-            baos.write(b1);
-            baos.write(b2);
-            // Handle absolute mode
-            if (b1 == 0x00 && (b2 & 0xff) > 0x02) {
-                int length = b2 & 0xff;
-                byte lengthInBytes = (byte) Math.ceil(length / 2.0);
-                // Copy pixels
-                for (int i=0; i<lengthInBytes; i++) {
-                    baos.write(bb.get());
-                }
-                // Fix wrong alignment
-                int wrongByteLength = (int) Math.ceil(length/2);
-                if (wrongByteLength % 2 == 0 && lengthInBytes % 2 == 1) {
-                    // Fix: Add missing padding byte
-                    baos.write(0x00);
-                } else if (wrongByteLength % 2 == 1 && lengthInBytes % 2 == 0) {
-                    // Fix: Remove unneeded padding byte
-                    bb.get();
-                } else if (lengthInBytes % 2 == 1) {
-                    // Copy legit padding byte
-                    baos.write(bb.get());
-                }
-            }
-        } while (bb.hasRemaining());
-
-        baos.close();
-
-        return baos.toByteArray();
+        // Transparent pixels keep their own color, as when the alpha channel is ignored by quantization
+        int width = inputImage.getWidth();
+        int height = inputImage.getHeight();
+        BufferedImage opaque = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        opaque.setRGB(0, 0, width, height, inputImage.getRGB(0, 0, width, height, null, 0, width), 0, width);
+        return opaque;
     }
 
-    private static BufferedImage redrawIndexedImage(BufferedImage inputImage) {
-        // Quantize image to 16 colors max
+    // Quantizes the image to 16 colors, fills the index in the palette of each pixel, and returns the palette
+    public static int[] quantize(BufferedImage inputImage, byte[] indexes) {
+        int width = inputImage.getWidth();
+        int height = inputImage.getHeight();
+        int[] rgb = inputImage.getRGB(0, 0, width, height, null, 0, width);
         QuantizeFilter quantizeFilter = new QuantizeFilter();
-        quantizeFilter.setNumColors(16);
+        quantizeFilter.setNumColors(RLE4BitmapEncoder.PALETTE_SIZE);
         quantizeFilter.setDither(true);
         quantizeFilter.setSerpentine(true);
-        BufferedImage outputImage = quantizeFilter.filter(inputImage, null);
-
-        // Extract palette from quantized image
-        int[] rgb = outputImage.getRGB(0, 0, outputImage.getWidth(), outputImage.getHeight(), null, 0, outputImage.getWidth());
-        int[] cmap = Arrays.stream(rgb).distinct().toArray();
-
-        // Force 16-colors palette
-        int[] cmap16 = Arrays.copyOf(cmap, 16);
-
-        // Create indexed image with palette
-        BufferedImage redrawn = new BufferedImage(outputImage.getWidth(), outputImage.getHeight(), BufferedImage.TYPE_BYTE_INDEXED, new IndexColorModel(4, cmap16.length, cmap16, 0, false, -1, 0));
-        Graphics2D g2d = redrawn.createGraphics();
-        g2d.fillRect(0, 0, redrawn.getWidth(), redrawn.getHeight());
-        g2d.drawImage(outputImage, 0, 0, null);
-        g2d.dispose();
-        return redrawn;
+        quantizeFilter.setDitherBands(width * height / DITHER_BAND_PIXELS);
+        return quantizeFilter.quantizeToIndexes(rgb, indexes, width, height);
     }
 }
@@ -0,0 +1,209 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/*
+Resizes opaque images, e.g. to bring them down to the device's screen resolution before they are quantized and encoded.
+Bilinear and bicubic filters are fast, but only sample a few source pixels for each output pixel, which causes aliasing
+when downscaling by large factors. Area-averaging and Lanczos filters take all source pixels into account.
+ */
+public class ImageResampler {
+
+    public static final int DEVICE_WIDTH = 320;
+    public static final int DEVICE_HEIGHT = 240;
+
+    public enum Filter {
+        BILINEAR,
+        BICUBIC,
+        // Each output pixel is the average of the source pixels it covers
+        AREA_AVERAGING,
+        // Sharper than area averaging, with some ringing on hard edges
+        LANCZOS3
+    }
+
+    private static final int LANCZOS_RADIUS = 3;
+
+    // Scales the image down, keeping its aspect ratio, so that it fits in the given size. Images that already fit are
+    // returned as is.
+    public static BufferedImage fitWithin(BufferedImage image, int maxWidth, int maxHeight, Filter filter) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (width <= maxWidth && height <= maxHeight) {
+            return image;
+        }
+        double scale = Math.min((double) maxWidth / width, (double) maxHeight / height);
+        int scaledWidth = Math.max(1, Math.min(maxWidth, (int) Math.round(width * scale)));
+        int scaledHeight = Math.max(1, Math.min(maxHeight, (int) Math.round(height * scale)));
+        return resize(image, scaledWidth, scaledHeight, filter);
+    }
+
+    public static BufferedImage fitToDevice(BufferedImage image, Filter filter) {
+        return fitWithin(image, DEVICE_WIDTH, DEVICE_HEIGHT, filter);
+    }
+
+    public static BufferedImage resize(BufferedImage image, int width, int height, Filter filter) {
+        switch (filter) {
+            case BILINEAR:
+                return drawScaled(image, width, height, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            case BICUBIC:
+                return drawScaled(image, width, height, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            default:
+                return resample(image, width, height, filter);
+        }
+    }
+
+    private static BufferedImage drawScaled(BufferedImage image, int width, int height, Object interpolation) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = scaled.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        g2d.drawImage(image, 0, 0, width, height, null);
+        g2d.dispose();
+        return scaled;
+    }
+
+    // Separable resampling: rows are resampled horizontally, then columns vertically
+    private static BufferedImage resample(BufferedImage image, int width, int height, Filter filter) {
+        int sourceWidth = image.getWidth();
+        int sourceHeight = image.getHeight();
+        Weights horizontal = new Weights(sourceWidth, width, filter);
+        Weights vertical = new Weights(sourceHeight, height, filter);
+
+        // Horizontal pass: red, green and blue components of each pixel
+        float[] rows = new float[sourceHeight * width * 3];
+        int[] source = new int[sourceWidth];
+        for (int y = 0; y < sourceHeight; y++) {
+            readRow(image, y, source);
+            int row = y * width * 3;
+            for (int x = 0; x < width; x++) {
+                float red = 0, green = 0, blue = 0;
+                int start = horizontal.start[x];
+                int offset = x * horizontal.maxCount;
+                for (int k = 0; k < horizontal.count[x]; k++) {
+                    int rgb = source[start + k];
+                    float weight = horizontal.values[offset + k];
+                    red += weight * ((rgb >> 16) & 0xff);
+                    green += weight * ((rgb >> 8) & 0xff);
+                    blue += weight * (rgb & 0xff);
+                }
+                rows[row + x * 3] = red;
+                rows[row + x * 3 + 1] = green;
+                rows[row + x * 3 + 2] = blue;
+            }
+        }
+
+        // Vertical pass, row by row
+        int[] pixels = new int[width * height];
+        float[] accumulator = new float[width * 3];
+        for (int y = 0; y < height; y++) {
+            Arrays.fill(accumulator, 0);
+            int start = vertical.start[y];
+            int offset = y * vertical.maxCount;
+            for (int k = 0; k < vertical.count[y]; k++) {
+                float weight = vertical.values[offset + k];
+                int row = (start + k) * width * 3;
+                for (int i = 0; i < accumulator.length; i++) {
+                    accumulator[i] += weight * rows[row + i];
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                pixels[y * width + x] = (clamp(accumulator[x * 3]) << 16) | (clamp(accumulator[x * 3 + 1]) << 8) | clamp(accumulator[x * 3 + 2]);
+            }
+        }
+
+        BufferedImage resampled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        resampled.setRGB(0, 0, width, height, pixels, 0, width);
+        return resampled;
+    }
+
+    // Reads a row of RGB pixels, straight from the raster for the most common image types
+    private static void readRow(BufferedImage image, int y, int[] row) {
+        int width = row.length;
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                image.getRaster().getDataElements(0, y, width, 1, row);
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+                // Data elements are in band order (red, green, blue), whatever the layout in memory
+                byte[] samples = (byte[]) image.getRaster().getDataElements(0, y, width, 1, null);
+                for (int x = 0; x < width; x++) {
+                    row[x] = (samples[x * 3] & 0xff) << 16 | (samples[x * 3 + 1] & 0xff) << 8 | (samples[x * 3 + 2] & 0xff);
+                }
+                break;
+            default:
+                image.getRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+
+    private static int clamp(float value) {
+        return Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    // Normalized weights of the source pixels of each output pixel, along one axis
+    private static class Weights {
+        private final int[] start;
+        private final int[] count;
+        private final float[] values;
+        private final int maxCount;
+
+        private Weights(int sourceSize, int size, Filter filter) {
+            double scale = (double) sourceSize / size;
+            // Filter is stretched when downscaling, so that it covers all source pixels
+            double filterScale = Math.max(scale, 1.0);
+            double support = filter == Filter.AREA_AVERAGING ? scale / 2 : LANCZOS_RADIUS * filterScale;
+            maxCount = (int) Math.ceil(2 * support) + 2;
+            start = new int[size];
+            count = new int[size];
+            values = new float[size * maxCount];
+            for (int i = 0; i < size; i++) {
+                double center = (i + 0.5) * scale;
+                int first = Math.max(0, (int) Math.floor(center - support));
+                int last = Math.min(sourceSize, (int) Math.ceil(center + support));
+                double sum = 0;
+                int n = 0;
+                for (int j = first; j < last && n < maxCount; j++, n++) {
+                    double weight;
+                    if (filter == Filter.AREA_AVERAGING) {
+                        // Overlap of the source pixel with the area covered by the output pixel
+                        weight = Math.max(0, Math.min(j + 1, center + support) - Math.max(j, center - support));
+                    } else {
+                        weight = lanczos((j + 0.5 - center) / filterScale);
+                    }
+                    values[i * maxCount + n] = (float) weight;
+                    sum += weight;
+                }
+                if (sum == 0) {
+                    // Nearest source pixel
+                    first = Math.min(sourceSize - 1, (int) center);
+                    n = 1;
+                    values[i * maxCount] = 1;
+                    sum = 1;
+                }
+                for (int k = 0; k < n; k++) {
+                    values[i * maxCount + k] /= sum;
+                }
+                start[i] = first;
+                count[i] = n;
+            }
+        }
+
+        private static double lanczos(double x) {
+            if (x == 0) {
+                return 1;
+            }
+            if (Math.abs(x) >= LANCZOS_RADIUS) {
+                return 0;
+            }
+            double px = Math.PI * x;
+            return LANCZOS_RADIUS * Math.sin(px) * Math.sin(px / LANCZOS_RADIUS) / (px * px);
+        }
+    }
+}
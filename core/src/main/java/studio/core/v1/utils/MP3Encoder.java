@@ -0,0 +1,142 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import de.sciss.jump3r.lowlevel.LameEncoder;
+import de.sciss.jump3r.mp3.MPEGMode;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/*
+Encodes PCM audio to mono MP3, at the sample rate of the encoder. Instances are thread-safe, so that assets are encoded
+concurrently on the transcoder's threads: each thread keeps its own working buffers, sized for the encoder, and reuses
+them from one encoding to the next. Resampling filters are shared by all encodings (see AudioResampler).
+ */
+public class MP3Encoder {
+
+    public static final int DEFAULT_SAMPLE_RATE = 44100;
+    public static final int DEFAULT_QUALITY = 4;
+
+    private static final int FLOAT_SAMPLE_SIZE = 4;
+    // Size of the buffer decoded PCM data is read through
+    private static final int PCM_BUFFER_SIZE = 64 * 1024;
+    // Output buffer is presized for this bitrate (in kbps), above the usual bitrate of mono VBR speech and music
+    private static final int ESTIMATED_BITRATE = 96;
+
+    private final int sampleRate;
+    private final int quality;
+    private final boolean vbr;
+    private final AudioFormat encoderFormat;
+    // Buffers of each thread, sized from the encoder's PCM buffer size for the format of this encoder
+    private final ThreadLocal<Buffers> buffers = new ThreadLocal<>();
+
+    private static class Buffers {
+        private final byte[] pcmBuffer = new byte[PCM_BUFFER_SIZE];
+        private final byte[] inputBuffer;
+        private final byte[] outputBuffer;
+        // Float samples view of the input buffer
+        private final FloatBuffer inputSamples;
+
+        private Buffers(int encoderBufferSize) {
+            this.inputBuffer = new byte[encoderBufferSize];
+            this.outputBuffer = new byte[encoderBufferSize];
+            this.inputSamples = ByteBuffer.wrap(inputBuffer).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+    }
+
+    public MP3Encoder(int sampleRate, int quality, boolean vbr) {
+        this.sampleRate = sampleRate;
+        this.quality = quality;
+        this.vbr = vbr;
+        this.encoderFormat = new AudioFormat(
+                AudioFormat.Encoding.PCM_FLOAT,
+                sampleRate,
+                FLOAT_SAMPLE_SIZE * 8,
+                1,
+                FLOAT_SAMPLE_SIZE,
+                sampleRate,
+                false
+        );
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public boolean isVbr() {
+        return vbr;
+    }
+
+    // Encodes 16-bits little-endian PCM, of any sample rate and channels count. Channels are downmixed and samples
+    // resampled to the encoder's rate, in a single pass.
+    public byte[] encodePcm(AudioInputStream pcm) throws IOException {
+        AudioFormat pcmFormat = pcm.getFormat();
+        AudioResampler resampler = new AudioResampler(pcmFormat.getSampleRate(), pcmFormat.getChannels(), sampleRate);
+        LameEncoder encoder = newLameEncoder();
+        try {
+            Buffers buffers = this.buffers.get();
+            if (buffers == null) {
+                buffers = new Buffers(encoder.getPCMBufferSize());
+                this.buffers.set(buffers);
+            }
+            ByteArrayOutputStream mp3 = new ByteArrayOutputStream(estimateSize(pcm));
+            int bytesRead;
+            int samples;
+            while (0 < (bytesRead = pcm.read(buffers.pcmBuffer))) {
+                samples = resampler.process(buffers.pcmBuffer, 0, bytesRead);
+                encode(encoder, resampler.output(), samples, buffers, mp3);
+            }
+            samples = resampler.flush();
+            encode(encoder, resampler.output(), samples, buffers, mp3);
+            int bytesWritten = encoder.encodeFinish(buffers.outputBuffer);
+            mp3.write(buffers.outputBuffer, 0, bytesWritten);
+            return mp3.toByteArray();
+        } finally {
+            encoder.close();
+        }
+    }
+
+    // The encoder library initializes all its state when the format is set, so encoders are not reused
+    private LameEncoder newLameEncoder() {
+        return new LameEncoder(encoderFormat, LameEncoder.BITRATE_AUTO, MPEGMode.MONO.ordinal(), quality, vbr);
+    }
+
+    // Estimated size of the MP3 data, from the duration of the PCM data when it is known
+    private static int estimateSize(AudioInputStream pcm) {
+        long frameLength = pcm.getFrameLength();
+        float frameRate = pcm.getFormat().getFrameRate();
+        if (frameLength == AudioSystem.NOT_SPECIFIED || frameRate <= 0) {
+            return PCM_BUFFER_SIZE;
+        }
+        long size = (long) (frameLength / frameRate * ESTIMATED_BITRATE * 1000 / 8);
+        return (int) Math.min(Math.max(size, 1024), Integer.MAX_VALUE - 8);
+    }
+
+    // Encodes float samples, in chunks that fit in the encoder's buffers
+    private static void encode(LameEncoder encoder, float[] samples, int count, Buffers buffers, ByteArrayOutputStream mp3) {
+        FloatBuffer inputSamples = buffers.inputSamples;
+        for (int offset = 0; offset < count; ) {
+            int chunk = Math.min(count - offset, inputSamples.capacity());
+            inputSamples.clear();
+            inputSamples.put(samples, offset, chunk);
+            int bytesWritten = encoder.encodeBuffer(buffers.inputBuffer, 0, chunk * FLOAT_SAMPLE_SIZE, buffers.outputBuffer);
+            mp3.write(buffers.outputBuffer, 0, bytesWritten);
+            offset += chunk;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import java.nio.ByteBuffer;
+
+/*
+Reads the format of MPEG audio files from their first frame headers, without decoding them. The duration comes from
+the Xing/Info or VBRI header of the first frame when there is one (VBR files written by most encoders), and is
+estimated from the bitrate otherwise.
+ */
+public class MP3FrameScanner {
+
+    // Frames are looked for in the first bytes of the audio data only
+    private static final int MAX_SYNC_SEARCH = 64 * 1024;
+    private static final int FRAME_HEADER_SIZE = 4;
+    private static final int VBRI_OFFSET = FRAME_HEADER_SIZE + 32;
+
+    private static final int MPEG_VERSION_1 = 3;
+    private static final int CHANNEL_MODE_MONO = 3;
+
+    // Sample rates by MPEG version (2.5, reserved, 2, 1), then sample rate index
+    private static final int[][] SAMPLE_RATES = {
+            {11025, 12000, 8000},
+            {0, 0, 0},
+            {22050, 24000, 16000},
+            {44100, 48000, 32000}
+    };
+    // Bitrates in kbps by MPEG-1 layer (I, II, III) then bitrate index
+    private static final int[][] BITRATES_V1 = {
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}
+    };
+    // Bitrates in kbps by MPEG-2/2.5 layer (I, II and III) then bitrate index
+    private static final int[][] BITRATES_V2 = {
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256},
+            {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160}
+    };
+
+    public static class MP3Info {
+        private final int layer;
+        private final int sampleRate;
+        private final int channels;
+        private final int bitrate;
+        private final boolean vbr;
+        private final long durationMillis;
+
+        private MP3Info(int layer, int sampleRate, int channels, int bitrate, boolean vbr, long durationMillis) {
+            this.layer = layer;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.bitrate = bitrate;
+            this.vbr = vbr;
+            this.durationMillis = durationMillis;
+        }
+
+        public int getLayer() {
+            return layer;
+        }
+
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        public int getChannels() {
+            return channels;
+        }
+
+        // Bitrate of the first frame in kbps, or average bitrate of VBR files with a Xing/Info or VBRI header
+        public int getBitrate() {
+            return bitrate;
+        }
+
+        public boolean isVbr() {
+            return vbr;
+        }
+
+        // Exact with a Xing/Info or VBRI header, estimated from the bitrate of the first frame otherwise (which is
+        // inaccurate for VBR files without such header)
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return "MPEG layer " + layer + ", " + sampleRate + "Hz, " + channels + " channel(s), " + bitrate + "kbps" + (vbr ? " VBR" : "") + ", " + durationMillis + "ms";
+        }
+    }
+
+    // Returns the format of the MPEG audio file, or null if no valid frame is found at its beginning. The buffer's
+    // position and limit are not changed.
+    public static MP3Info scan(ByteBuffer mp3Buffer) {
+        int start = mp3Buffer.position();
+        int end = mp3Buffer.limit();
+        // Skip ID3v2 tag, and ID3v1 tag at the end
+        if (ID3Tags.hasID3v2Tag(mp3Buffer.slice())) {
+            start += ID3Tags.getID3v2TagSize(mp3Buffer.slice());
+        }
+        if (ID3Tags.hasID3v1Tag(mp3Buffer.slice())) {
+            end -= ID3Tags.ID3V1_SIZE;
+        }
+
+        int searchEnd = Math.min(end - FRAME_HEADER_SIZE, start + MAX_SYNC_SEARCH);
+        for (int offset = start; offset <= searchEnd; offset++) {
+            int header = frameHeader(mp3Buffer, offset, end);
+            if (header == 0) {
+                continue;
+            }
+            // Make sure this is not a false sync: the next frame, if any, must have the same format
+            int frameLength = frameLength(header);
+            int nextOffset = offset + frameLength;
+            if (nextOffset + FRAME_HEADER_SIZE <= end) {
+                int nextHeader = frameHeader(mp3Buffer, nextOffset, end);
+                // Version, layer and sample rate bits
+                if (nextHeader == 0 || (nextHeader & 0xfffe0c00) != (header & 0xfffe0c00)) {
+                    continue;
+                }
+            }
+            return info(mp3Buffer, offset, end, header);
+        }
+        return null;
+    }
+
+    private static MP3Info info(ByteBuffer mp3Buffer, int offset, int end, int header) {
+        int version = version(header);
+        int layer = layer(header);
+        int sampleRate = sampleRate(header);
+        int channels = ((header >>> 6) & 0x3) == CHANNEL_MODE_MONO ? 1 : 2;
+        int bitrate = bitrate(header);
+        int samplesPerFrame = samplesPerFrame(header);
+
+        // VBR headers are in the first frame, after the side information of layer III
+        if (layer == 3) {
+            int sideInfoSize = version == MPEG_VERSION_1 ? (channels == 1 ? 17 : 32) : (channels == 1 ? 9 : 17);
+            int xingOffset = offset + FRAME_HEADER_SIZE + sideInfoSize;
+            if (isTag(mp3Buffer, xingOffset, end, "Xing") || isTag(mp3Buffer, xingOffset, end, "Info")) {
+                int flags = mp3Buffer.getInt(xingOffset + 4);
+                // Frames count, then bytes count, are present when flagged
+                long frames = (flags & 0x1) != 0 && xingOffset + 12 <= end ? mp3Buffer.getInt(xingOffset + 8) & 0xffffffffL : 0;
+                // Placeholder headers of streamed encodings have no frames count
+                if (frames > 0) {
+                    long bytes = (flags & 0x2) != 0 && xingOffset + 16 <= end ? mp3Buffer.getInt(xingOffset + 12) & 0xffffffffL : end - offset;
+                    boolean vbr = isTag(mp3Buffer, xingOffset, end, "Xing");
+                    return withFrames(layer, sampleRate, channels, vbr ? 0 : bitrate, vbr, frames, bytes, samplesPerFrame);
+                }
+            }
+            int vbriOffset = offset + VBRI_OFFSET;
+            if (isTag(mp3Buffer, vbriOffset, end, "VBRI") && vbriOffset + 18 <= end && mp3Buffer.getInt(vbriOffset + 14) != 0) {
+                long bytes = mp3Buffer.getInt(vbriOffset + 10) & 0xffffffffL;
+                long frames = mp3Buffer.getInt(vbriOffset + 14) & 0xffffffffL;
+                return withFrames(layer, sampleRate, channels, 0, true, frames, bytes, samplesPerFrame);
+            }
+        }
+        // Constant bitrate (or unknown): estimate duration from the size of the audio data
+        long durationMillis = (end - offset) * 8L / bitrate;
+        return new MP3Info(layer, sampleRate, channels, bitrate, false, durationMillis);
+    }
+
+    private static MP3Info withFrames(int layer, int sampleRate, int channels, int bitrate, boolean vbr, long frames, long bytes, int samplesPerFrame) {
+        long durationMillis = frames * samplesPerFrame * 1000L / sampleRate;
+        if (bitrate == 0) {
+            // Average bitrate
+            bitrate = durationMillis > 0 ? (int) (bytes * 8 / durationMillis) : 0;
+        }
+        return new MP3Info(layer, sampleRate, channels, bitrate, vbr, durationMillis);
+    }
+
+    // Returns the frame header at the given offset, or 0 if it is not a valid frame header
+    private static int frameHeader(ByteBuffer mp3Buffer, int offset, int end) {
+        if (offset + FRAME_HEADER_SIZE > end || (mp3Buffer.get(offset) & 0xff) != 0xff || (mp3Buffer.get(offset + 1) & 0xe0) != 0xe0) {
+            return 0;
+        }
+        int header = ((mp3Buffer.get(offset) & 0xff) << 24) | ((mp3Buffer.get(offset + 1) & 0xff) << 16) | ((mp3Buffer.get(offset + 2) & 0xff) << 8) | (mp3Buffer.get(offset + 3) & 0xff);
+        int versionBits = (header >>> 19) & 0x3;
+        int layerBits = (header >>> 17) & 0x3;
+        int bitrateIndex = (header >>> 12) & 0xf;
+        int sampleRateIndex = (header >>> 10) & 0x3;
+        // Reserved values, and free format (whose frame length cannot be computed from the header)
+        if (versionBits == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 0xf || sampleRateIndex == 3) {
+            return 0;
+        }
+        return header;
+    }
+
+    private static boolean isTag(ByteBuffer mp3Buffer, int offset, int end, String tag) {
+        if (offset + 8 > end) {
+            return false;
+        }
+        for (int i = 0; i < tag.length(); i++) {
+            if (mp3Buffer.get(offset + i) != tag.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int version(int header) {
+        return (header >>> 19) & 0x3;
+    }
+
+    private static int layer(int header) {
+        return 4 - ((header >>> 17) & 0x3);
+    }
+
+    private static int sampleRate(int header) {
+        return SAMPLE_RATES[version(header)][(header >>> 10) & 0x3];
+    }
+
+    // In kbps
+    private static int bitrate(int header) {
+        int index = (header >>> 12) & 0xf;
+        int layer = layer(header);
+        if (version(header) == MPEG_VERSION_1) {
+            return BITRATES_V1[layer - 1][index];
+        }
+        return BITRATES_V2[layer == 1 ? 0 : 1][index];
+    }
+
+    private static int samplesPerFrame(int header) {
+        int layer = layer(header);
+        if (layer == 1) {
+            return 384;
+        }
+        return layer == 3 && version(header) != MPEG_VERSION_1 ? 576 : 1152;
+    }
+
+    private static int frameLength(int header) {
+        int padding = (header >>> 9) & 0x1;
+        int bitrate = bitrate(header) * 1000;
+        int sampleRate = sampleRate(header);
+        if (layer(header) == 1) {
+            return (12 * bitrate / sampleRate + padding) * 4;
+        }
+        return samplesPerFrame(header) / 8 * bitrate / sampleRate + padding;
+    }
+}
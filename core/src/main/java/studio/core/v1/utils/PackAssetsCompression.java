@@ -6,20 +6,48 @@
 
 package studio.core.v1.utils;
 
-import org.apache.commons.codec.digest.DigestUtils;
+import studio.core.v1.model.Asset;
+import studio.core.v1.model.ImageAsset;
 import studio.core.v1.model.StageNode;
 import studio.core.v1.model.StoryPack;
+import studio.core.v1.model.asset.AssetSource;
 
-import javax.sound.sampled.AudioFileFormat;
-import javax.sound.sampled.AudioSystem;
-import java.io.ByteArrayInputStream;
-import java.util.TreeMap;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 public class PackAssetsCompression {
 
     private static final Logger LOGGER = Logger.getLogger(PackAssetsCompression.class.getName());
 
+    // Images larger than the device's screen are scaled down to fit, with this filter
+    private static final ImageResampler.Filter DEVICE_FIT_FILTER = ImageResampler.Filter.AREA_AVERAGING;
+    private static final String DEVICE_FIT = ";fit=" + ImageResampler.DEVICE_WIDTH + "x" + ImageResampler.DEVICE_HEIGHT + ";filter=" + DEVICE_FIT_FILTER.name().toLowerCase();
+
+    // Keys of the conversions in the cache: target format and encoding parameters. They must change whenever the
+    // output of a conversion changes.
+    private static final String PNG_CONVERSION = "image/png" + DEVICE_FIT;
+    private static final String JPEG_CONVERSION = "image/jpeg" + DEVICE_FIT;
+    private static final String BMP_CONVERSION = "image/bmp" + DEVICE_FIT;
+    private static final String RLE_BMP_CONVERSION = "image/bmp;depth=4;compression=rle4;padding=fixed" + DEVICE_FIT;
+    private static final String OGG_CONVERSION = "audio/ogg;quality=" + AudioConversion.OGG_QUALITY + ";rate=" + AudioConversion.OGG_SAMPLE_RATE;
+    private static final String WAV_CONVERSION = "audio/x-wav;bits=" + AudioConversion.BITSIZE + ";rate=" + AudioConversion.WAVE_SAMPLE_RATE + ";channels=" + AudioConversion.CHANNELS + ";length=fixed";
+    private static final String MP3_CONVERSION = "audio/mpeg;quality=" + AudioConversion.MP3_QUALITY + ";vbr;rate=" + AudioConversion.MP3_SAMPLE_RATE + ";channels=" + AudioConversion.CHANNELS + ";resampler=sinc";
+
+    @FunctionalInterface
+    private interface DataConversion {
+        byte[] convert(byte[] data) throws Exception;
+    }
+
     public static boolean hasCompressedAssets(StoryPack pack) {
         for (int i = 0; i < pack.getStageNodes().size(); i++) {
             StageNode node = pack.getStageNodes().get(i);
@@ -37,169 +65,206 @@ public class PackAssetsCompression {
     }
 
     public static StoryPack withCompressedAssets(StoryPack pack) throws Exception {
-        // Store compressed assets bytes
-        TreeMap<String, byte[]> assets = new TreeMap<>();
+        return withCompressedAssets(pack, null);
+    }
 
-        for (int i = 0; i < pack.getStageNodes().size(); i++) {
-            StageNode node = pack.getStageNodes().get(i);
+    public static StoryPack withCompressedAssets(StoryPack pack, AssetConversionCache cache) throws Exception {
+        return withCompressedAssets(pack, cache, ConvertedAssetStore.IN_MEMORY);
+    }
 
-            if (node.getImage() != null) {
-                LOGGER.fine("Processing image asset `" + node.getImage().getName() + "`");
-                byte[] imageData = node.getImage().getRawData();
-                String assetHash = DigestUtils.sha1Hex(imageData);
-                if (assets.get(assetHash) == null) {
-                    if ("image/bmp".equals(node.getImage().getMimeType())) {
-                        LOGGER.fine("Compressing BMP image asset `" + node.getImage().getName() + "` into PNG");
-                        imageData = ImageConversion.bitmapToPng(imageData);
+    public static StoryPack withCompressedAssets(StoryPack pack, AssetConversionCache cache, ConvertedAssetStore store) throws Exception {
+        // Compress distinct assets concurrently
+        Map<Asset, AssetSource> assets = AssetTranscoder.convertDistinct(collectAssets(pack), asset -> {
+            if (asset instanceof ImageAsset) {
+                LOGGER.fine("Processing image asset `" + asset.getName() + "`");
+                if ("image/bmp".equals(asset.getMimeType())) {
+                    LOGGER.fine("Compressing BMP image asset `" + asset.getName() + "` into PNG");
+                    return convert(cache, store, asset.getSource(), PNG_CONVERSION, data -> ImageConversion.anyToPng(data, DEVICE_FIT_FILTER));
+                }
+                // Scale down large images, in the same format
+                if (isLargerThanDevice(asset.getSource())) {
+                    switch (asset.getMimeType()) {
+                        case "image/png":
+                            LOGGER.fine("Scaling down PNG image asset `" + asset.getName() + "`");
+                            return convert(cache, store, asset.getSource(), PNG_CONVERSION, data -> ImageConversion.anyToPng(data, DEVICE_FIT_FILTER));
+                        case "image/jpeg":
+                            LOGGER.fine("Scaling down JPG image asset `" + asset.getName() + "`");
+                            return convert(cache, store, asset.getSource(), JPEG_CONVERSION, data -> ImageConversion.convertImage(data, "JPEG", DEVICE_FIT_FILTER));
                     }
-                    assets.put(assetHash, imageData);
                 }
-                // Use asset (already compressed) bytes from map
-                node.getImage().setRawData(assets.get(assetHash));
-                if ("image/bmp".equals(node.getImage().getMimeType())) {
-                    node.getImage().setMimeType("image/png");
+            } else {
+                LOGGER.fine("Processing audio asset `" + asset.getName() + "`");
+                if ("audio/x-wav".equals(asset.getMimeType())) {
+                    LOGGER.fine("Compressing WAV audio asset `" + asset.getName() + "` into OGG");
+                    return convert(cache, store, asset.getSource(), OGG_CONVERSION, AudioConversion::waveToOgg);
                 }
             }
+            return asset.getSource();
+        });
 
-            if (node.getAudio() != null) {
-                LOGGER.fine("Processing audio asset `" + node.getAudio().getName() + "`");
-                byte[] audioData = node.getAudio().getRawData();
-                String assetHash = DigestUtils.sha1Hex(audioData);
-                if (assets.get(assetHash) == null) {
-                    if ("audio/x-wav".equals(node.getAudio().getMimeType())) {
-                        LOGGER.fine("Compressing WAV audio asset `" + node.getAudio().getName() + "` into OGG");
-                        audioData = AudioConversion.waveToOgg(audioData);
-                        node.getAudio().setMimeType("audio/ogg");
-                    }
-                    assets.put(assetHash, audioData);
-                }
-                // Use asset (already compressed) bytes from map
-                node.getAudio().setRawData(assets.get(assetHash));
-                if ("audio/x-wav".equals(node.getAudio().getMimeType())) {
-                    node.getAudio().setMimeType("audio/ogg");
-                }
+        assets.forEach((asset, source) -> {
+            // Use asset (already compressed) source
+            asset.setSource(source);
+            if ("image/bmp".equals(asset.getMimeType())) {
+                asset.setMimeType("image/png");
+            } else if ("audio/x-wav".equals(asset.getMimeType())) {
+                asset.setMimeType("audio/ogg");
             }
-        }
+        });
 
         return pack;
     }
 
     public static StoryPack withUncompressedAssets(StoryPack pack) throws Exception {
-        // Store uncompressed assets bytes
-        TreeMap<String, byte[]> assets = new TreeMap<>();
-
-        for (int i = 0; i < pack.getStageNodes().size(); i++) {
-            StageNode node = pack.getStageNodes().get(i);
+        return withUncompressedAssets(pack, null);
+    }
 
-            if (node.getImage() != null) {
-                LOGGER.fine("Processing image asset `" + node.getImage().getName() + "`");
-                byte[] imageData = node.getImage().getRawData();
-                String assetHash = DigestUtils.sha1Hex(imageData);
-                if (assets.get(assetHash) == null) {
-                    switch (node.getImage().getMimeType()) {
-                        case "image/png":
-                            LOGGER.fine("Uncompressing PNG image asset `" + node.getImage().getName() + "` into BMP");
-                            imageData = ImageConversion.anyToBitmap(imageData);
-                            break;
-                        case "image/jpeg":
-                            LOGGER.fine("Uncompressing JPG image asset `" + node.getImage().getName() + "` into BMP");
-                            imageData = ImageConversion.anyToBitmap(imageData);
-                            break;
-                        case "image/bmp":
-                            // Convert from 4-bits depth / RLE encoding BMP
-                            if (imageData[28] == 0x04 && imageData[30] == 0x02) {
-                                LOGGER.fine("Uncompressing 4-bits/RLE BMP image asset `" + node.getImage().getName() + "` into BMP");
-                                imageData = ImageConversion.anyToBitmap(imageData);
-                            }
-                            break;
-                    }
-                    assets.put(assetHash, imageData);
-                }
-                // Use asset (already uncompressed) bytes from map
-                node.getImage().setRawData(assets.get(assetHash));
-                node.getImage().setMimeType("image/bmp");
-            }
+    public static StoryPack withUncompressedAssets(StoryPack pack, AssetConversionCache cache) throws Exception {
+        return withUncompressedAssets(pack, cache, ConvertedAssetStore.IN_MEMORY);
+    }
 
-            if (node.getAudio() != null) {
-                LOGGER.fine("Processing audio asset `" + node.getAudio().getName() + "`");
-                byte[] audioData = node.getAudio().getRawData();
-                String assetHash = DigestUtils.sha1Hex(audioData);
-                if (assets.get(assetHash) == null) {
-                    if (!"audio/x-wav".equals(node.getAudio().getMimeType())) {
-                        switch (node.getAudio().getMimeType()) {
-                            case "audio/ogg":
-                                LOGGER.fine("Uncompressing OGG audio asset `" + node.getAudio().getName() + "` into WAV");
-                                audioData = AudioConversion.oggToWave(audioData);
-                                break;
-                            case "audio/mpeg":
-                                LOGGER.fine("Uncompressing MP3 audio asset `" + node.getAudio().getName() + "` into WAV");
-                                audioData = AudioConversion.mp3ToWave(audioData);
-                                break;
+    public static StoryPack withUncompressedAssets(StoryPack pack, AssetConversionCache cache, ConvertedAssetStore store) throws Exception {
+        // Uncompress distinct assets concurrently
+        Map<Asset, AssetSource> assets = AssetTranscoder.convertDistinct(collectAssets(pack), asset -> {
+            if (asset instanceof ImageAsset) {
+                LOGGER.fine("Processing image asset `" + asset.getName() + "`");
+                switch (asset.getMimeType()) {
+                    case "image/png":
+                        LOGGER.fine("Uncompressing PNG image asset `" + asset.getName() + "` into BMP");
+                        return convert(cache, store, asset.getSource(), BMP_CONVERSION, data -> ImageConversion.anyToBitmap(data, DEVICE_FIT_FILTER));
+                    case "image/jpeg":
+                        LOGGER.fine("Uncompressing JPG image asset `" + asset.getName() + "` into BMP");
+                        return convert(cache, store, asset.getSource(), BMP_CONVERSION, data -> ImageConversion.anyToBitmap(data, DEVICE_FIT_FILTER));
+                    case "image/bmp":
+                        // Convert from 4-bits depth / RLE encoding BMP
+                        if (isRLECompressedBitmap(asset.getSource())) {
+                            LOGGER.fine("Uncompressing 4-bits/RLE BMP image asset `" + asset.getName() + "` into BMP");
+                            return convert(cache, store, asset.getSource(), BMP_CONVERSION, data -> ImageConversion.anyToBitmap(data, DEVICE_FIT_FILTER));
                         }
-                    }
-                    assets.put(assetHash, audioData);
+                        if (isLargerThanDevice(asset.getSource())) {
+                            LOGGER.fine("Scaling down BMP image asset `" + asset.getName() + "`");
+                            return convert(cache, store, asset.getSource(), BMP_CONVERSION, data -> ImageConversion.anyToBitmap(data, DEVICE_FIT_FILTER));
+                        }
+                        break;
+                }
+            } else {
+                LOGGER.fine("Processing audio asset `" + asset.getName() + "`");
+                switch (asset.getMimeType()) {
+                    case "audio/ogg":
+                        LOGGER.fine("Uncompressing OGG audio asset `" + asset.getName() + "` into WAV");
+                        return convert(cache, store, asset.getSource(), WAV_CONVERSION, AudioConversion::oggToWave);
+                    case "audio/mpeg":
+                        LOGGER.fine("Uncompressing MP3 audio asset `" + asset.getName() + "` into WAV");
+                        return convert(cache, store, asset.getSource(), WAV_CONVERSION, AudioConversion::mp3ToWave);
                 }
-                // Use asset (already uncompressed) bytes from map
-                node.getAudio().setRawData(assets.get(assetHash));
-                node.getAudio().setMimeType("audio/x-wav");
             }
-        }
+            return asset.getSource();
+        });
+
+        assets.forEach((asset, source) -> {
+            // Use asset (already uncompressed) source
+            asset.setSource(source);
+            asset.setMimeType(asset instanceof ImageAsset ? "image/bmp" : "audio/x-wav");
+        });
 
         return pack;
     }
 
     public static StoryPack withPreparedAssetsFirmware2dot4(StoryPack pack) throws Exception {
-        // Store prepared assets bytes
-        TreeMap<String, byte[]> assets = new TreeMap<>();
+        return withPreparedAssetsFirmware2dot4(pack, null);
+    }
 
-        for (int i = 0; i < pack.getStageNodes().size(); i++) {
-            StageNode node = pack.getStageNodes().get(i);
+    public static StoryPack withPreparedAssetsFirmware2dot4(StoryPack pack, AssetConversionCache cache) throws Exception {
+        return withPreparedAssetsFirmware2dot4(pack, cache, ConvertedAssetStore.IN_MEMORY);
+    }
 
-            if (node.getImage() != null) {
-                LOGGER.fine("Processing image asset `" + node.getImage().getName() + "`");
-                byte[] imageData = node.getImage().getRawData();
-                String assetHash = DigestUtils.sha1Hex(imageData);
-                if (assets.get(assetHash) == null) {
-                    // Convert to 4-bits depth / RLE encoding BMP
-                    if (!"image/bmp".equals(node.getImage().getMimeType()) || imageData[28] != 0x04 || imageData[30] != 0x02) {
-                        LOGGER.fine("Converting image asset `" + node.getImage().getName() + "` into 4-bits/RLE BMP");
-                        imageData = ImageConversion.anyToRLECompressedBitmap(imageData);
-                    }
-                    assets.put(assetHash, imageData);
+    public static StoryPack withPreparedAssetsFirmware2dot4(StoryPack pack, AssetConversionCache cache, ConvertedAssetStore store) throws Exception {
+        // Prepare distinct assets concurrently
+        Map<Asset, AssetSource> assets = AssetTranscoder.convertDistinct(collectAssets(pack), asset -> {
+            if (asset instanceof ImageAsset) {
+                LOGGER.fine("Processing image asset `" + asset.getName() + "`");
+                // Convert to 4-bits depth / RLE encoding BMP
+                if (!"image/bmp".equals(asset.getMimeType()) || !isRLECompressedBitmap(asset.getSource()) || isLargerThanDevice(asset.getSource())) {
+                    LOGGER.fine("Converting image asset `" + asset.getName() + "` into 4-bits/RLE BMP");
+                    return convert(cache, store, asset.getSource(), RLE_BMP_CONVERSION, data -> ImageConversion.anyToRLECompressedBitmap(data, DEVICE_FIT_FILTER));
                 }
-                // Use asset (already compressed) bytes from map
-                node.getImage().setRawData(assets.get(assetHash));
-                node.getImage().setMimeType("image/bmp");
+                return asset.getSource();
             }
+            LOGGER.fine("Processing audio asset `" + asset.getName() + "`");
+            if (!"audio/mp3".equals(asset.getMimeType()) && !"audio/mpeg".equals(asset.getMimeType())) {
+                LOGGER.fine("Converting audio asset `" + asset.getName() + "` into MP3");
+                return convert(cache, store, asset.getSource(), MP3_CONVERSION, AudioConversion::anyToMp3);
+            }
+            // Check that the file is MONO / 44100Hz, from its first frame headers
+            ByteBuffer audioBuffer = asset.getSource().getByteBuffer();
+            MP3FrameScanner.MP3Info mp3Info = MP3FrameScanner.scan(audioBuffer);
+            if (mp3Info == null
+                    || mp3Info.getChannels() != AudioConversion.CHANNELS
+                    || mp3Info.getSampleRate() != AudioConversion.MP3_SAMPLE_RATE) {
+                LOGGER.fine("Re-encoding MP3 audio asset `" + asset.getName() + "`");
+                return convert(cache, store, asset.getSource(), MP3_CONVERSION, data -> AudioConversion.anyToMp3(removeID3Tags(data)));
+            }
+            if (!ID3Tags.hasID3v1Tag(audioBuffer) && !ID3Tags.hasID3v2Tag(audioBuffer)) {
+                return asset.getSource();
+            }
+            // Remove ID3 tags
+            return store.store(removeID3Tags(asset.getSource().readAllBytes()));
+        });
+
+        assets.forEach((asset, source) -> {
+            // Use asset (already prepared) source
+            asset.setSource(source);
+            asset.setMimeType(asset instanceof ImageAsset ? "image/bmp" : "audio/mpeg");
+        });
+
+        return pack;
+    }
+
+    private static AssetSource convert(AssetConversionCache cache, ConvertedAssetStore store, AssetSource source, String conversionKey, DataConversion conversion) throws Exception {
+        if (cache == null) {
+            return store.store(conversion.convert(source.readAllBytes()));
+        }
+        return store.store(cache.getOrConvert(source.getSha1Hex(), conversionKey, () -> conversion.convert(source.readAllBytes())));
+    }
+
+    private static byte[] removeID3Tags(byte[] mp3Data) {
+        return ID3Tags.removeID3v2Tag(ID3Tags.removeID3v1Tag(mp3Data));
+    }
 
+    // Image and audio assets of all stage nodes, in pack order
+    private static List<Asset> collectAssets(StoryPack pack) {
+        List<Asset> assets = new ArrayList<>();
+        for (StageNode node : pack.getStageNodes()) {
+            if (node.getImage() != null) {
+                assets.add(node.getImage());
+            }
             if (node.getAudio() != null) {
-                LOGGER.fine("Processing audio asset `" + node.getAudio().getName() + "`");
-                byte[] audioData = node.getAudio().getRawData();
-                String assetHash = DigestUtils.sha1Hex(audioData);
-                if (assets.get(assetHash) == null) {
-                    if (!"audio/mp3".equals(node.getAudio().getMimeType()) && !"audio/mpeg".equals(node.getAudio().getMimeType())) {
-                        LOGGER.fine("Converting audio asset `" + node.getAudio().getName() + "` into MP3");
-                        audioData = AudioConversion.anyToMp3(audioData);
-                    } else {
-                        // Remove potential ID3 tags
-                        audioData = ID3Tags.removeID3v1Tag(audioData);
-                        audioData = ID3Tags.removeID3v2Tag(audioData);
-                        // Check that the file is MONO / 44100Hz
-                        AudioFileFormat audioFileFormat = AudioSystem.getAudioFileFormat(new ByteArrayInputStream(audioData));
-                        if (audioFileFormat.getFormat().getChannels() != AudioConversion.CHANNELS
-                                || audioFileFormat.getFormat().getSampleRate() != AudioConversion.MP3_SAMPLE_RATE) {
-                            LOGGER.fine("Re-encoding MP3 audio asset `" + node.getAudio().getName() + "`");
-                            audioData = AudioConversion.anyToMp3(audioData);
-                        }
-                    }
-                    assets.put(assetHash, audioData);
-                }
-                // Use asset (already compressed) bytes from map
-                node.getAudio().setRawData(assets.get(assetHash));
-                node.getAudio().setMimeType("audio/mpeg");
+                assets.add(node.getAudio());
             }
         }
+        return assets;
+    }
 
-        return pack;
+    private static boolean isRLECompressedBitmap(AssetSource imageSource) throws Exception {
+        // 4-bits depth / RLE encoding BMP
+        ByteBuffer bmpBuffer = imageSource.getByteBuffer();
+        return bmpBuffer.limit() > 30 && bmpBuffer.get(28) == 0x04 && bmpBuffer.get(30) == 0x02;
+    }
+
+    private static boolean isLargerThanDevice(AssetSource imageSource) throws IOException {
+        // Only read the image header
+        try (InputStream is = imageSource.openStream(); ImageInputStream iis = new MemoryCacheImageInputStream(is)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                return false;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                return reader.getWidth(0) > ImageResampler.DEVICE_WIDTH || reader.getHeight(0) > ImageResampler.DEVICE_HEIGHT;
+            } finally {
+                reader.dispose();
+            }
+        }
     }
 }
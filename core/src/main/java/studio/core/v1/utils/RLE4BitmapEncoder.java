@@ -0,0 +1,129 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/*
+Writes 4-bits/RLE-compressed BMP images (BI_RLE4), from an array of palette indexes, in a single pass.
+Header fields are the same as those written by the JDK's BMPImageWriter, and absolute-mode runs are padded to a
+16-bits boundary as the specification requires.
+ */
+public class RLE4BitmapEncoder {
+
+    public static final int PALETTE_SIZE = 16;
+
+    private static final int FILE_HEADER_SIZE = 14;
+    private static final int INFO_HEADER_SIZE = 40;
+    private static final int HEADER_SIZE = FILE_HEADER_SIZE + INFO_HEADER_SIZE + PALETTE_SIZE * 4;
+    private static final int BI_RLE4 = 2;
+
+    // Longest run, in pixels
+    private static final int MAX_RUN = 255;
+    // Shortest run worth encoding on its own. Shorter runs are part of absolute-mode runs.
+    private static final int MIN_RUN = 3;
+
+    // Encodes the given pixels (palette indexes, top-down rows) with the given palette (RGB colors, at most 16)
+    public static byte[] encode(byte[] pixels, int width, int height, int[] palette) {
+        if (pixels.length != width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " pixels, got " + pixels.length);
+        }
+        if (palette.length > PALETTE_SIZE) {
+            throw new IllegalArgumentException("Palette has more than " + PALETTE_SIZE + " colors: " + palette.length);
+        }
+        // Each absolute-mode run takes at most one more byte than its pixels count, and is followed by a longer
+        // encoded run (which takes 2 bytes), another absolute-mode run, or the end of the line
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE + height * (width + 3) + 2).order(ByteOrder.LITTLE_ENDIAN);
+
+        // File header (sizes are written once known)
+        bb.put((byte) 'B').put((byte) 'M');
+        bb.putInt(0);
+        bb.putInt(0);
+        bb.putInt(HEADER_SIZE);
+        // Info header
+        bb.putInt(INFO_HEADER_SIZE);
+        bb.putInt(width);
+        // Bottom-up rows
+        bb.putInt(height);
+        bb.putShort((short) 1);
+        bb.putShort((short) 4);
+        bb.putInt(BI_RLE4);
+        bb.putInt(0);
+        // Pixels per meter
+        bb.putInt(0);
+        bb.putInt(0);
+        // Colors used (0 means all), colors important
+        bb.putInt(0);
+        bb.putInt(PALETTE_SIZE);
+        // Palette: blue, green, red, then a reserved byte
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+            int rgb = i < palette.length ? palette[i] : 0;
+            bb.put((byte) rgb).put((byte) (rgb >> 8)).put((byte) (rgb >> 16)).put((byte) 0xff);
+        }
+
+        for (int y = height - 1; y >= 0; y--) {
+            encodeLine(pixels, y * width, width, bb);
+            // End of line
+            bb.put((byte) 0).put((byte) 0);
+        }
+        // End of bitmap
+        bb.put((byte) 0).put((byte) 1);
+
+        int fileSize = bb.position();
+        bb.putInt(2, fileSize);
+        bb.putInt(34, fileSize - HEADER_SIZE);
+        return Arrays.copyOf(bb.array(), fileSize);
+    }
+
+    private static void encodeLine(byte[] pixels, int offset, int width, ByteBuffer bb) {
+        int end = offset + width;
+        int i = offset;
+        while (i < end) {
+            int run = runLength(pixels, i, end);
+            if (run >= MIN_RUN) {
+                // Encoded mode: count, then the pixel repeated in both nibbles
+                bb.put((byte) run).put((byte) (pixels[i] << 4 | pixels[i]));
+                i += run;
+                continue;
+            }
+            // Collect pixels up to the next run long enough
+            int j = i + run;
+            while (j < end && j - i < MAX_RUN) {
+                run = runLength(pixels, j, end);
+                if (run >= MIN_RUN) {
+                    break;
+                }
+                j = Math.min(j + run, i + MAX_RUN);
+            }
+            int length = j - i;
+            if (length < MIN_RUN) {
+                // Too short for absolute mode (lengths 0 to 2 are escapes): encoded mode with alternating nibbles
+                bb.put((byte) length).put((byte) (pixels[i] << 4 | (length > 1 ? pixels[i + 1] : 0)));
+            } else {
+                // Absolute mode: 0, count, then packed pixels padded to 16 bits
+                bb.put((byte) 0).put((byte) length);
+                for (int k = i; k < j; k += 2) {
+                    bb.put((byte) (pixels[k] << 4 | (k + 1 < j ? pixels[k + 1] : 0)));
+                }
+                if (((length + 1) / 2) % 2 == 1) {
+                    bb.put((byte) 0);
+                }
+            }
+            i = j;
+        }
+    }
+
+    private static int runLength(byte[] pixels, int start, int end) {
+        int i = start + 1;
+        while (i < end && i - start < MAX_RUN && pixels[i] == pixels[start]) {
+            i++;
+        }
+        return i - start;
+    }
+}
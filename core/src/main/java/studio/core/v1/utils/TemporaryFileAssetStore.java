@@ -0,0 +1,65 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import org.apache.commons.io.FileUtils;
+import studio.core.v1.model.asset.AssetSource;
+import studio.core.v1.model.asset.FileRegionAssetSource;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/*
+Spills converted assets to temporary files, so that the memory used by a conversion does not depend on the size of
+the pack. Stored assets are only valid until the store is closed, which deletes its folder. Their files are never
+memory-mapped: a mapping lasts until its buffer is garbage-collected, and prevents the file from being deleted on Windows.
+ */
+public class TemporaryFileAssetStore implements ConvertedAssetStore, Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(TemporaryFileAssetStore.class.getName());
+
+    private final Path directory;
+
+    public TemporaryFileAssetStore(Path parentDirectory) throws IOException {
+        this.directory = Files.createTempDirectory(parentDirectory, "assets");
+    }
+
+    @Override
+    public AssetSource store(byte[] data) throws IOException {
+        Path assetFile = Files.createTempFile(directory, "asset", ".tmp");
+        Files.write(assetFile, data);
+        return new TemporaryFileAssetSource(assetFile, data.length);
+    }
+
+    // The conversion is complete (or failed) once the store is closed: files that cannot be deleted are left behind
+    @Override
+    public void close() {
+        try {
+            FileUtils.deleteDirectory(directory.toFile());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to delete temporary assets folder " + directory, e);
+        }
+    }
+
+    private static class TemporaryFileAssetSource extends FileRegionAssetSource {
+
+        private TemporaryFileAssetSource(Path path, long size) {
+            super(path, 0, size);
+        }
+
+        // Read into the heap instead of being mapped. Converted assets are small enough.
+        @Override
+        public ByteBuffer getByteBuffer() throws IOException {
+            return ByteBuffer.wrap(readAllBytes()).asReadOnlyBuffer();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package studio.core.v1.utils;
 
 import java.io.*;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
 import org.xiph.libvorbis.*;
 import org.xiph.libogg.*;
 
@@ -43,20 +46,80 @@ import org.xiph.libogg.*;
 public class VorbisEncoder {
 
     private static final int READ = 1024;
-    private static byte[] BUFFER = new byte[READ*4+44];
+    // Input PCM is mono, and duplicated into both channels
+    private static final int CHANNELS = 2;
 
-    public static byte[] encode(InputStream pcmInputStream) throws VorbisEncodingException {
+    public static final int DEFAULT_SAMPLE_RATE = 44100;
+    public static final float DEFAULT_QUALITY = .3f;
 
-        boolean eos = false;
+    private static final VorbisEncoder DEFAULT = new VorbisEncoder(DEFAULT_SAMPLE_RATE, DEFAULT_QUALITY);
+
+    private final int sampleRate;
+    private final float quality;
+    // Encoder setups, along with their read buffers. A setup is modified when an encoding starts, so it is only used
+    // by one encoding at a time. At most one idle setup per processor is kept.
+    private final Queue<Setup> setups = new ConcurrentLinkedQueue<>();
+    private final int maxIdleSetups = Runtime.getRuntime().availableProcessors();
 
+    private static class Setup {
         // struct that stores all the static vorbis bitstream settings
-        vorbis_info vi = new vorbis_info();
+        private final vorbis_info vi = new vorbis_info();
+        private final byte[] readBuffer = new byte[READ*4+44];
+    }
 
-        vorbisenc encoder = new vorbisenc();
+    // Instances are thread-safe: concurrent encodings each borrow their own setup
+    public VorbisEncoder(int sampleRate, float quality) {
+        this.sampleRate = sampleRate;
+        this.quality = quality;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public float getQuality() {
+        return quality;
+    }
+
+    // Encodes 16-bits little-endian mono PCM, at 44100Hz, with the default quality
+    public static byte[] encode(InputStream pcmInputStream) throws VorbisEncodingException {
+        return DEFAULT.encodePcm(pcmInputStream);
+    }
 
-        if ( !encoder.vorbis_encode_init_vbr( vi, 2, 44100, .3f ) ) {
-            throw new VorbisEncodingException("Failed to Initialize vorbisenc");
+    // Encodes 16-bits little-endian mono PCM, at the sample rate of this encoder
+    public byte[] encodePcm(InputStream pcmInputStream) throws VorbisEncodingException {
+        Setup setup = setups.poll();
+        if (setup == null) {
+            setup = newSetup();
         }
+        try {
+            return encode(pcmInputStream, setup);
+        } finally {
+            if (setups.size() < maxIdleSetups) {
+                setups.offer(setup);
+            }
+        }
+    }
+
+    private Setup newSetup() throws VorbisEncodingException {
+        Setup setup = new Setup();
+        vorbisenc encoder = new vorbisenc();
+        try {
+            if ( !encoder.vorbis_encode_init_vbr( setup.vi, CHANNELS, sampleRate, quality ) ) {
+                throw new VorbisEncodingException("Failed to Initialize vorbisenc");
+            }
+        } catch (RuntimeException e) {
+            // The library only has settings for 44100Hz and higher sample rates
+            throw new VorbisEncodingException("Unsupported sample rate " + sampleRate + "Hz or quality " + quality, e);
+        }
+        return setup;
+    }
+
+    private static byte[] encode(InputStream pcmInputStream, Setup setup) throws VorbisEncodingException {
+        vorbis_info vi = setup.vi;
+        byte[] readBuffer = setup.readBuffer;
+
+        boolean eos = false;
 
         // struct that stores all the user comments
         vorbis_comment vc = new vorbis_comment();
@@ -109,11 +172,11 @@ public class VorbisEncoder {
             while ( !eos ) {
 
                 int i;
-                int bytes = pcmInputStream.read(BUFFER, 0, READ*4 );
+                int bytes = pcmInputStream.read(readBuffer, 0, READ*4 );
 
                 int break_count = 0;
 
-                if ( bytes==0 ) {
+                if ( bytes<=0 ) {
 
                     // end of file.  this can be done implicitly in the mainline,
                     // but it's easier to see here in non-clever fashion.
@@ -131,8 +194,8 @@ public class VorbisEncoder {
 
                     // duplicate mono channel
                     for ( i=0; i < bytes/2; i++ ) {
-                        buffer[0][vd.pcm_current + i] = ( (BUFFER[i*2+1]<<8) | (0x00ff&(int) BUFFER[i*2]) ) / 32768.f;
-                        buffer[1][vd.pcm_current + i] = ( (BUFFER[i*2+1]<<8) | (0x00ff&(int) BUFFER[i*2]) ) / 32768.f;
+                        buffer[0][vd.pcm_current + i] = ( (readBuffer[i*2+1]<<8) | (0x00ff&(int) readBuffer[i*2]) ) / 32768.f;
+                        buffer[1][vd.pcm_current + i] = ( (readBuffer[i*2+1]<<8) | (0x00ff&(int) readBuffer[i*2]) ) / 32768.f;
                     }
 
                     // tell the library how much we actually submitted
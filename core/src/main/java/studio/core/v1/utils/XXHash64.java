@@ -0,0 +1,143 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+xxHash64 non-cryptographic hash (https://github.com/Cyan4973/xxHash), several times faster than SHA-1. It is only meant
+to tell apart contents of the same pack (e.g. to deduplicate assets): contents that must be identified across packs or
+over time are identified by their SHA-1 digest. Content may be hashed in chunks of any size.
+ */
+public class XXHash64 {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE_SIZE = 32;
+
+    private final long seed;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+    private long length = 0;
+    // Bytes of an incomplete stripe, until the next chunk completes it
+    private final ByteBuffer stripe = ByteBuffer.allocate(STRIPE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    public XXHash64() {
+        this(0L);
+    }
+
+    public XXHash64(long seed) {
+        this.seed = seed;
+        this.v1 = seed + PRIME1 + PRIME2;
+        this.v2 = seed + PRIME2;
+        this.v3 = seed;
+        this.v4 = seed - PRIME1;
+    }
+
+    public static long hash(byte[] data) {
+        return hash(ByteBuffer.wrap(data));
+    }
+
+    // Hashes the remaining bytes of the buffer, without changing its position
+    public static long hash(ByteBuffer buffer) {
+        XXHash64 xxHash64 = new XXHash64();
+        xxHash64.update(buffer.duplicate());
+        return xxHash64.getValue();
+    }
+
+    public void update(byte[] data, int offset, int length) {
+        update(ByteBuffer.wrap(data, offset, length));
+    }
+
+    // Hashes the remaining bytes of the buffer, which is consumed
+    public void update(ByteBuffer buffer) {
+        // Read through a little-endian view, whose position is reported to the buffer at the end
+        ByteBuffer input = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        length += input.remaining();
+        // Complete the pending stripe first
+        if (stripe.position() > 0) {
+            while (stripe.hasRemaining() && input.hasRemaining()) {
+                stripe.put(input.get());
+            }
+            if (stripe.hasRemaining()) {
+                buffer.position(input.position());
+                return;
+            }
+            stripe.flip();
+            processStripe(stripe);
+            stripe.clear();
+        }
+        while (input.remaining() >= STRIPE_SIZE) {
+            processStripe(input);
+        }
+        stripe.put(input);
+        buffer.position(input.position());
+    }
+
+    private void processStripe(ByteBuffer input) {
+        v1 = round(v1, input.getLong());
+        v2 = round(v2, input.getLong());
+        v3 = round(v3, input.getLong());
+        v4 = round(v4, input.getLong());
+    }
+
+    // Hash of all bytes so far. More bytes may still be added afterwards.
+    public long getValue() {
+        long h;
+        if (length >= STRIPE_SIZE) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + PRIME5;
+        }
+        h += length;
+
+        // Bytes of the last, incomplete, stripe
+        ByteBuffer tail = stripe.duplicate().flip().order(ByteOrder.LITTLE_ENDIAN);
+        while (tail.remaining() >= 8) {
+            h ^= round(0, tail.getLong());
+            h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+        }
+        if (tail.remaining() >= 4) {
+            h ^= (tail.getInt() & 0xFFFFFFFFL) * PRIME1;
+            h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+        }
+        while (tail.hasRemaining()) {
+            h ^= (tail.get() & 0xFF) * PRIME5;
+            h = Long.rotateLeft(h, 11) * PRIME1;
+        }
+
+        // Avalanche
+        h ^= h >>> 33;
+        h *= PRIME2;
+        h ^= h >>> 29;
+        h *= PRIME3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME1;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * PRIME1 + PRIME4;
+    }
+}
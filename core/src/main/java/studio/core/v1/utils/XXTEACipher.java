@@ -6,12 +6,45 @@
 
 package studio.core.v1.utils;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 public class XXTEACipher {
 
     public static final byte[] COMMON_KEY = new byte[] { (byte)0x91, (byte)0xbd, (byte)0x7a, (byte)0x0a, (byte)0xa7, (byte)0x54, (byte)0x40, (byte)0xa9, (byte)0xbb, (byte)0xd4, (byte)0x9d, (byte)0x6c, (byte)0xe0, (byte)0xdc, (byte)0xc0, (byte)0xe3};
 
     private static final int DELTA = 0x9e3779b9;
 
+    // Common key as (big-endian) 32-bits words, computed once
+    private static final int[] COMMON_KEY_WORDS = toKeyWords(COMMON_KEY);
+
+    // Converts a 128-bits key to the 32-bits words XXTEA works with
+    public static int[] toKeyWords(byte[] key) {
+        return BytesUtils.toIntArray(key, ByteOrder.BIG_ENDIAN);
+    }
+
+    // Ciphers, in place, the first bytes of the buffer (from its position, up to blockSize bytes) with the common key.
+    // Data is processed as little-endian 32-bits words: trailing bytes that do not make a whole word are left as is.
+    public static void cipherCommonKey(ByteBuffer data, int blockSize) {
+        cipher(data, blockSize, COMMON_KEY_WORDS);
+    }
+
+    public static void decipherCommonKey(ByteBuffer data, int blockSize) {
+        decipher(data, blockSize, COMMON_KEY_WORDS);
+    }
+
+    public static void cipher(ByteBuffer data, int blockSize, int[] key) {
+        btea(data, blockWords(data, blockSize), key);
+    }
+
+    public static void decipher(ByteBuffer data, int blockSize, int[] key) {
+        btea(data, -blockWords(data, blockSize), key);
+    }
+
+    private static int blockWords(ByteBuffer data, int blockSize) {
+        return Math.min(blockSize, data.remaining()) / 4;
+    }
+
     public static int[] btea(int[] v, int n, int[] k) {
         int y, z, sum;
         int p, rounds, e;
@@ -47,6 +80,57 @@ public class XXTEACipher {
         }
         return v;
     }
+    // Same as above, on the little-endian words of the buffer from its position, without copying them
+    private static void btea(ByteBuffer data, int n, int[] k) {
+        int offset = data.position();
+        boolean swap = data.order() != ByteOrder.LITTLE_ENDIAN;
+        int y, z, sum;
+        int p, rounds, e;
+        if (n > 1) {          /* Coding Part */
+            rounds = 1 + 52/n;
+            sum = 0;
+            z = word(data, offset, n-1, swap);
+            do {
+                sum += DELTA;
+                e = (sum >>> 2) & 3;
+                for (p=0; p<n-1; p++) {
+                    y = word(data, offset, p+1, swap);
+                    z = word(data, offset, p, swap) + mx(k, e, p, y, z, sum);
+                    putWord(data, offset, p, z, swap);
+                }
+                y = word(data, offset, 0, swap);
+                z = word(data, offset, n-1, swap) + mx(k, e, p, y, z, sum);
+                putWord(data, offset, n-1, z, swap);
+            } while (--rounds != 0);
+        } else if (n < -1) {  /* Decoding Part */
+            n = -n;
+            rounds = 1 + 52/n;
+            sum = rounds*DELTA;
+            y = word(data, offset, 0, swap);
+            do {
+                e = (sum >>> 2) & 3;
+                for (p=n-1; p>0; p--) {
+                    z = word(data, offset, p-1, swap);
+                    y = word(data, offset, p, swap) - mx(k, e, p, y, z, sum);
+                    putWord(data, offset, p, y, swap);
+                }
+                z = word(data, offset, n-1, swap);
+                y = word(data, offset, 0, swap) - mx(k, e, p, y, z, sum);
+                putWord(data, offset, 0, y, swap);
+                sum -= DELTA;
+            } while (--rounds != 0);
+        }
+    }
+
+    private static int word(ByteBuffer data, int offset, int index, boolean swap) {
+        int word = data.getInt(offset + index * 4);
+        return swap ? Integer.reverseBytes(word) : word;
+    }
+
+    private static void putWord(ByteBuffer data, int offset, int index, int word, boolean swap) {
+        data.putInt(offset + index * 4, swap ? Integer.reverseBytes(word) : word);
+    }
+
     private static int mx(int[] k, int e, int p, int y, int z, int sum) {
         return (((z>>>5^y<<2) + (y>>>3^z<<4)) ^ ((sum^y) + (k[(p&3)^e] ^ z)));
     }
@@ -7,39 +7,86 @@
 package studio.core.v1.writer.archive;
 
 import com.google.gson.stream.JsonWriter;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.IOUtils;
+import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import studio.core.v1.model.ActionNode;
 import studio.core.v1.model.Node;
 import studio.core.v1.model.StageNode;
 import studio.core.v1.model.StoryPack;
+import studio.core.v1.model.asset.AssetSource;
+import studio.core.v1.model.asset.ByteArrayAssetSource;
 import studio.core.v1.model.enriched.EnrichedNodePosition;
 import studio.core.v1.model.enriched.EnrichedNodeType;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 public class ArchiveStoryPackWriter {
 
-    public void write(StoryPack pack, OutputStream outputStream) throws IOException {
+    private static final Logger LOGGER = Logger.getLogger(ArchiveStoryPackWriter.class.getName());
+
+    // Assets in these formats are already compressed: deflating them again costs time for no gain
+    private static final Set<String> STORED_EXTENSIONS = Set.of(".png", ".jpg", ".ogg", ".mp3");
+
+    // Entries are deflated on a pool shared by all archives, at most this many entries ahead of the merge
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_PENDING_ENTRIES = 2 * PARALLELISM;
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(PARALLELISM, new ArchiveThreadFactory());
+
+    private static final int CRC_BUFFER_SIZE = 64 * 1024;
+
+    // Compression level of deflated entries (story descriptor, uncompressed assets)
+    private final int compressionLevel;
+    // Folder of the temporary files holding deflated entries until they are merged into the archive
+    private final Path scatterDirectory;
+
+    public ArchiveStoryPackWriter() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ArchiveStoryPackWriter(int compressionLevel) {
+        this(compressionLevel, null);
+    }
+
+    public ArchiveStoryPackWriter(int compressionLevel, Path scatterDirectory) {
+        this.compressionLevel = compressionLevel;
+        this.scatterDirectory = scatterDirectory;
+    }
 
-        // Zip archive contains a json file and separate assets
-        ZipOutputStream zos = new ZipOutputStream(outputStream);
+    public void write(StoryPack pack, OutputStream outputStream) throws IOException {
 
-        // Store assets bytes
-        TreeMap<String, byte[]> assets = new TreeMap<>();
+        // Store assets sources, content is only read when written to the archive
+        TreeMap<String, AssetSource> assets = new TreeMap<>();
 
 
-        // Add story descriptor file: story.json
-        ZipEntry zipEntry = new ZipEntry("story.json");
-        zos.putNextEntry(zipEntry);
+        // Story descriptor file (story.json) is written in memory, and added to the archive with the assets
+        ByteArrayOutputStream descriptor = new ByteArrayOutputStream();
 
         // Start json document
-        JsonWriter writer = new JsonWriter(new OutputStreamWriter(zos));
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(descriptor));
         writer.setIndent("    ");
         writer.beginObject();
 
@@ -88,21 +135,21 @@ public class ArchiveStoryPackWriter {
             if (node.getImage() == null) {
                 writer.nullValue();
             } else {
-                byte[] imageData = node.getImage().getRawData();
+                AssetSource imageSource = node.getImage().getSource();
                 String extension = extensionFromMimeType(node.getImage().getMimeType());
-                String assetFileName = DigestUtils.sha1Hex(imageData) + extension;
+                String assetFileName = imageSource.getSha1Hex() + extension;
                 writer.value(assetFileName);
-                assets.putIfAbsent(assetFileName, imageData);
+                assets.putIfAbsent(assetFileName, imageSource);
             }
             writer.name("audio");
             if (node.getAudio() == null) {
                 writer.nullValue();
             } else {
-                byte[] audioData = node.getAudio().getRawData();
+                AssetSource audioSource = node.getAudio().getSource();
                 String extension = extensionFromMimeType(node.getAudio().getMimeType());
-                String assetFileName = DigestUtils.sha1Hex(audioData) + extension;
+                String assetFileName = audioSource.getSha1Hex() + extension;
                 writer.value(assetFileName);
-                assets.putIfAbsent(assetFileName, audioData);
+                assets.putIfAbsent(assetFileName, audioSource);
             }
             writer.name("okTransition");
             if (node.getOkTransition() == null) {
@@ -166,18 +213,173 @@ public class ArchiveStoryPackWriter {
         writer.flush();
 
 
-        // Add assets in separate directory
-        zipEntry = new ZipEntry("assets/");
-        zos.putNextEntry(zipEntry);
-        for (Map.Entry<String, byte[]> assetEntry : assets.entrySet()) {
-            String assetPath = "assets/" + assetEntry.getKey();
-            zipEntry = new ZipEntry(assetPath);
-            zos.putNextEntry(zipEntry);
-            IOUtils.write(assetEntry.getValue(), zos);
+        writer.close();
+
+
+        // Deflate entries (or checksum stored entries) concurrently, then merge them in archive order. Entries are
+        // submitted only a few steps ahead of the merge, so that few temporary files (and deflaters) are open at once.
+        Deque<PendingEntry> pendingEntries = new ArrayDeque<>();
+        try (ScatterStreams scatterStreams = new ScatterStreams();
+             ZipArchiveOutputStream zos = new ZipArchiveOutputStream(outputStream)) {
+            try {
+                // Zip archive contains a json file and separate assets
+                pendingEntries.add(submit(scatterStreams, "story.json", new ByteArrayAssetSource(descriptor.toByteArray())));
+                for (Map.Entry<String, AssetSource> assetEntry : assets.entrySet()) {
+                    if (pendingEntries.size() >= MAX_PENDING_ENTRIES) {
+                        mergeNext(pendingEntries, zos);
+                    }
+                    pendingEntries.add(submit(scatterStreams, "assets/" + assetEntry.getKey(), assetEntry.getValue()));
+                }
+                while (!pendingEntries.isEmpty()) {
+                    mergeNext(pendingEntries, zos);
+                }
+                zos.finish();
+            } finally {
+                // Tasks that did not start are cancelled, those that did close their stream once the streams are closed
+                for (PendingEntry pendingEntry : pendingEntries) {
+                    pendingEntry.cancel();
+                }
+            }
+        }
+    }
+
+    private void mergeNext(Deque<PendingEntry> pendingEntries, ZipArchiveOutputStream zos) throws IOException {
+        PendingEntry pendingEntry = pendingEntries.remove();
+        pendingEntry.writeTo(zos);
+        if ("story.json".equals(pendingEntry.entry.getName())) {
+            ZipArchiveEntry directoryEntry = new ZipArchiveEntry("assets/");
+            directoryEntry.setMethod(ZipEntry.STORED);
+            directoryEntry.setSize(0L);
+            directoryEntry.setCrc(0L);
+            zos.putArchiveEntry(directoryEntry);
+            zos.closeArchiveEntry();
+        }
+    }
+
+    private PendingEntry submit(ScatterStreams scatterStreams, String name, AssetSource source) {
+        ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        if (isStored(name)) {
+            // Stored entries must declare their size and checksum upfront
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(source.getSize());
+            entry.setCompressedSize(source.getSize());
+            return new PendingEntry(entry, source, scatterStreams, EXECUTOR.submit(() -> {
+                entry.setCrc(crc32(source));
+                return null;
+            }));
+        }
+        entry.setMethod(ZipEntry.DEFLATED);
+        return new PendingEntry(entry, source, scatterStreams, EXECUTOR.submit(() -> {
+            Path scatterFile = scatterDirectory != null
+                    ? Files.createTempFile(scatterDirectory, "scatter", ".tmp")
+                    : Files.createTempFile("scatter", ".tmp");
+            ScatterZipOutputStream scatter;
+            try {
+                scatter = ScatterZipOutputStream.pathBased(scatterFile, compressionLevel);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(scatterFile);
+                throw e;
+            }
+            try {
+                scatter.addArchiveEntry(ZipArchiveEntryRequest.createZipArchiveEntryRequest(entry, () -> {
+                    try {
+                        return source.openStream();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            } catch (IOException | RuntimeException e) {
+                scatter.close();
+                throw e;
+            }
+            // From now on, the stream is closed with the others even if it is never merged
+            scatterStreams.add(scatter);
+            return scatter;
+        }));
+    }
+
+    // Deflated entries of an archive being written. Closing a stream removes its temporary file.
+    private static class ScatterStreams implements Closeable {
+        private final Set<ScatterZipOutputStream> streams = new HashSet<>();
+        private boolean closed = false;
+
+        private synchronized void add(ScatterZipOutputStream stream) throws IOException {
+            if (closed) {
+                // Archive was already completed or abandoned
+                stream.close();
+                throw new InterruptedIOException("Archive is closed");
+            }
+            streams.add(stream);
+        }
+
+        private synchronized void remove(ScatterZipOutputStream stream) {
+            streams.remove(stream);
         }
 
-        zos.flush();
-        zos.close();
+        @Override
+        public synchronized void close() {
+            closed = true;
+            for (ScatterZipOutputStream stream : streams) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Failed to remove temporary archive entry", e);
+                }
+            }
+            streams.clear();
+        }
+    }
+
+    // An entry being deflated into a temporary file, or checksummed, before being merged into the archive
+    private static class PendingEntry {
+        private final ZipArchiveEntry entry;
+        private final AssetSource source;
+        private final ScatterStreams scatterStreams;
+        private final Future<ScatterZipOutputStream> scatter;
+
+        private PendingEntry(ZipArchiveEntry entry, AssetSource source, ScatterStreams scatterStreams, Future<ScatterZipOutputStream> scatter) {
+            this.entry = entry;
+            this.source = source;
+            this.scatterStreams = scatterStreams;
+            this.scatter = scatter;
+        }
+
+        private void writeTo(ZipArchiveOutputStream zos) throws IOException {
+            ScatterZipOutputStream scatterStream = await();
+            if (scatterStream == null) {
+                // Stored entry, checksum is now known
+                zos.putArchiveEntry(entry);
+                source.transferTo(zos);
+                zos.closeArchiveEntry();
+            } else {
+                try (scatterStream) {
+                    scatterStream.writeTo(zos);
+                } finally {
+                    scatterStreams.remove(scatterStream);
+                }
+            }
+        }
+
+        private void cancel() {
+            scatter.cancel(false);
+        }
+
+        private ScatterZipOutputStream await() throws IOException {
+            try {
+                return scatter.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing archive entry " + entry.getName());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                throw new IOException("Failed to write archive entry " + entry.getName(), e.getCause());
+            }
+        }
     }
 
     private void writeEnrichedNodeMetadata(JsonWriter writer, Node node) throws IOException {
@@ -205,6 +407,23 @@ public class ArchiveStoryPackWriter {
         }
     }
 
+    private boolean isStored(String assetFileName) {
+        int extensionIndex = assetFileName.lastIndexOf('.');
+        return extensionIndex >= 0 && STORED_EXTENSIONS.contains(assetFileName.substring(extensionIndex));
+    }
+
+    // Streamed through a bounded buffer: lazy sources (e.g. zip entries) are not read whole into memory
+    private long crc32(AssetSource source) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[CRC_BUFFER_SIZE];
+        try (InputStream is = new CheckedInputStream(source.openStream(), crc)) {
+            while (is.read(buffer) >= 0) {
+                // Checksum is updated by the stream
+            }
+        }
+        return crc.getValue();
+    }
+
     private String extensionFromMimeType(String mimeType) {
         switch (mimeType) {
             case "image/bmp":
@@ -224,4 +443,16 @@ public class ArchiveStoryPackWriter {
         }
     }
 
+    private static class ArchiveThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "archive-writer-" + threadNumber.getAndIncrement());
+            // Do not prevent the JVM from exiting
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
 }
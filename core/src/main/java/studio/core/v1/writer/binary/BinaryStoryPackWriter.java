@@ -6,9 +6,10 @@
 
 package studio.core.v1.writer.binary;
 
-import org.apache.commons.codec.digest.DigestUtils;
 import studio.core.v1.Constants;
 import studio.core.v1.model.*;
+import studio.core.v1.model.asset.AssetDedupKeys;
+import studio.core.v1.model.asset.AssetSource;
 import studio.core.v1.model.enriched.EnrichedNodePosition;
 import studio.core.v1.model.enriched.EnrichedNodeType;
 import studio.core.v1.reader.binary.AssetAddr;
@@ -53,25 +54,26 @@ public class BinaryStoryPackWriter {
                 actionNodesMap.put(new SectorAddr(nextFreeOffset++), stageNode.getHomeTransition().getActionNode());
             }
         }
+        AssetDedupKeys dedupKeys = new AssetDedupKeys();
         TreeMap<String, AssetAddr> assetsHashes = new TreeMap<>();
-        TreeMap<AssetAddr, byte[]> assetsData = new TreeMap<>();
+        TreeMap<AssetAddr, AssetSource> assetsData = new TreeMap<>();
         for (StageNode stageNode : pack.getStageNodes()) {
             ImageAsset image = stageNode.getImage();
             if (image != null) {
-                byte[] imageData = image.getRawData();
-                String assetHash = DigestUtils.sha1Hex(imageData);
+                AssetSource imageSource = image.getSource();
+                String assetHash = dedupKeys.keyOf(imageSource);
                 if (!assetsHashes.containsKey(assetHash)) {
                     if (!"image/bmp".equals(image.getMimeType())) {
                         throw new IllegalArgumentException("Cannot write binary pack file from a compressed story pack. Uncompress the pack assets first.");
                     }
-                    int imageSize = imageData.length;
-                    int imageSectors = (imageSize / Constants.SECTOR_SIZE);
+                    long imageSize = imageSource.getSize();
+                    int imageSectors = (int) (imageSize / Constants.SECTOR_SIZE);
                     if (imageSize % Constants.SECTOR_SIZE > 0) {
                         imageSectors++;
                     }
                     AssetAddr addr = new AssetAddr(nextFreeOffset, imageSectors, AssetType.IMAGE);
                     assetsHashes.put(assetHash, addr);
-                    assetsData.put(addr, image.getRawData());
+                    assetsData.put(addr, imageSource);
                     nextFreeOffset += imageSectors;
                 }
             }
@@ -79,20 +81,20 @@ public class BinaryStoryPackWriter {
         for (StageNode stageNode : pack.getStageNodes()) {
             AudioAsset audio = stageNode.getAudio();
             if (audio != null) {
-                byte[] audioData = audio.getRawData();
-                String assetHash = DigestUtils.sha1Hex(audioData);
+                AssetSource audioSource = audio.getSource();
+                String assetHash = dedupKeys.keyOf(audioSource);
                 if (!assetsHashes.containsKey(assetHash)) {
                     if (!"audio/x-wav".equals(audio.getMimeType())) {
                         throw new IllegalArgumentException("Cannot write binary pack file from a compressed story pack. Uncompress the pack assets first.");
                     }
-                    int audioSize = audioData.length;
-                    int audioSectors = (audioSize / Constants.SECTOR_SIZE);
+                    long audioSize = audioSource.getSize();
+                    int audioSectors = (int) (audioSize / Constants.SECTOR_SIZE);
                     if (audioSize % Constants.SECTOR_SIZE > 0) {
                         audioSectors++;
                     }
                     AssetAddr addr = new AssetAddr(nextFreeOffset, audioSectors, AssetType.AUDIO);
                     assetsHashes.put(assetHash, addr);
-                    assetsData.put(addr, audio.getRawData());
+                    assetsData.put(addr, audioSource);
                     nextFreeOffset += audioSectors;
                 }
             }
@@ -111,7 +113,7 @@ public class BinaryStoryPackWriter {
                 dos.writeInt(-1);
                 dos.writeInt(-1);
             } else {
-                String assetHash = DigestUtils.sha1Hex(image.getRawData());
+                String assetHash = dedupKeys.keyOf(image.getSource());
                 AssetAddr assetAddr = assetsHashes.get(assetHash);
                 dos.writeInt(assetAddr.getOffset());
                 dos.writeInt(assetAddr.getSize());
@@ -123,7 +125,7 @@ public class BinaryStoryPackWriter {
                 dos.writeInt(-1);
                 dos.writeInt(-1);
             } else {
-                String assetHash = DigestUtils.sha1Hex(audio.getRawData());
+                String assetHash = dedupKeys.keyOf(audio.getSource());
                 AssetAddr assetAddr = assetsHashes.get(assetHash);
                 dos.writeInt(assetAddr.getOffset());
                 dos.writeInt(assetAddr.getSize());
@@ -204,7 +206,7 @@ public class BinaryStoryPackWriter {
         }
 
         // Write assets (images / audio)
-        for (Map.Entry<AssetAddr, byte[]> assetEntry: assetsData.entrySet()) {
+        for (Map.Entry<AssetAddr, AssetSource> assetEntry: assetsData.entrySet()) {
             // First sector to write
             AssetAddr assetAddr = assetEntry.getKey();
             // Skip to the beginning of the sector, if needed
@@ -213,12 +215,12 @@ public class BinaryStoryPackWriter {
                 currentOffset++;
             }
 
-            // Asset to write
-            byte[] assetBytes = assetEntry.getValue();
+            // Asset to write, streamed from its source
+            AssetSource assetSource = assetEntry.getValue();
             // Write all bytes
             int overflow = 0;
-            dos.write(assetBytes, 0, assetBytes.length);
-            overflow = assetBytes.length % Constants.SECTOR_SIZE;
+            long assetLength = assetSource.transferTo(dos);
+            overflow = (int) (assetLength % Constants.SECTOR_SIZE);
 
             // Skip to end of sector
             if (overflow > 0) {
@@ -7,13 +7,14 @@
 package studio.core.v1.writer.fs;
 
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
 import studio.core.v1.model.*;
+import studio.core.v1.model.asset.AssetDedupKeys;
+import studio.core.v1.model.asset.AssetSource;
+import studio.core.v1.model.asset.ByteArrayAssetSource;
 import studio.core.v1.utils.AudioConversion;
 import studio.core.v1.utils.ID3Tags;
+import studio.core.v1.utils.MP3FrameScanner;
 
-import javax.sound.sampled.AudioFileFormat;
-import javax.sound.sampled.AudioSystem;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -44,7 +45,7 @@ public class FsStoryPackWriter {
 
     public Path write(StoryPack pack, Path outputFolder) throws Exception {
         // Create pack folder: last 8 digits of uuid
-        File packFolder = new File(outputFolder.toFile(), transformUuid(UUID.fromString(pack.getUuid())));
+        File packFolder = packFolder(outputFolder, pack.getUuid()).toFile();
         packFolder.mkdirs();
 
         // Write night mode
@@ -55,8 +56,9 @@ public class FsStoryPackWriter {
         // Indicate that files are cleartext
         new File(packFolder, CLEARTEXT_FILENAME).createNewFile();
 
-        // Store assets bytes
-        TreeMap<String, byte[]> assets = new TreeMap<>();
+        // Store assets sources, by key of their distinct content
+        AssetDedupKeys dedupKeys = new AssetDedupKeys();
+        TreeMap<String, AssetSource> assets = new TreeMap<>();
 
         // Add nodes index file: ni
         FileOutputStream niFos = new FileOutputStream(new File(packFolder, NODE_INDEX_FILENAME));
@@ -77,16 +79,16 @@ public class FsStoryPackWriter {
         bb.putInt((int) pack.getStageNodes().stream()
                 .map(StageNode::getImage)
                 .filter(Objects::nonNull)
-                .map(ImageAsset::getRawData)
-                .map(DigestUtils::sha1Hex)
+                .map(ImageAsset::getSource)
+                .map(dedupKeys::keyOf)
                 .distinct()
                 .count());
         // Number of sounds (in SI file and sf/ folder)
         bb.putInt((int) pack.getStageNodes().stream()
                 .map(StageNode::getAudio)
                 .filter(Objects::nonNull)
-                .map(AudioAsset::getRawData)
-                .map(DigestUtils::sha1Hex)
+                .map(AudioAsset::getSource)
+                .map(dedupKeys::keyOf)
                 .distinct()
                 .count());
         // Is factory pack (boolean) set to true to avoid pack inspection by official Luniistore application
@@ -109,13 +111,13 @@ public class FsStoryPackWriter {
             int imageIndex = -1;
             ImageAsset image = node.getImage();
             if (image != null) {
-                byte[] imageData = image.getRawData();
-                String imageHash = DigestUtils.sha1Hex(imageData);
+                AssetSource imageSource = image.getSource();
+                String imageHash = dedupKeys.keyOf(imageSource);
                 if (!imageHashOrdered.contains(imageHash)) {
                     if (!"image/bmp".equals(image.getMimeType())) {
                         throw new IllegalArgumentException("FS pack file requires image assets to be BMP.");
                     }
-                    ByteBuffer bmpBuffer = ByteBuffer.wrap(imageData);
+                    ByteBuffer bmpBuffer = imageSource.getByteBuffer();
                     bmpBuffer.order(ByteOrder.LITTLE_ENDIAN);
                     // Make sure the BMP file is RLE-compressed / 4-bits depth
                     if (bmpBuffer.getShort(28) != 0x0004 || bmpBuffer.getInt(30) != 0x00000002) {
@@ -127,7 +129,7 @@ public class FsStoryPackWriter {
                     }
                     imageIndex = imageHashOrdered.size();
                     imageHashOrdered.add(imageHash);
-                    assets.putIfAbsent(imageHash, imageData);
+                    assets.putIfAbsent(imageHash, imageSource);
                 } else {
                     imageIndex = imageHashOrdered.indexOf(imageHash);
                 }
@@ -136,28 +138,32 @@ public class FsStoryPackWriter {
             AudioAsset audio = node.getAudio();
             // If audio is missing, add a blank audio to satisfy the device
             if (audio == null) {
-                audio = new AudioAsset("audio/mp3", Hex.decodeHex(BLANK_MP3_FILE), "blank_audio_placeholder");
+                audio = new AudioAsset("audio/mp3", new ByteArrayAssetSource(Hex.decodeHex(BLANK_MP3_FILE)), "blank_audio_placeholder");
             }
-            byte[] audioData = audio.getRawData();
-            String audioHash = DigestUtils.sha1Hex(audioData);
+            AssetSource audioSource = audio.getSource();
+            String audioHash = dedupKeys.keyOf(audioSource);
             if (!audioHashOrdered.contains(audioHash)) {
                 if (!"audio/mp3".equals(audio.getMimeType()) && !"audio/mpeg".equals(audio.getMimeType())) {
                     throw new IllegalArgumentException("FS pack file requires audio assets to be MP3.");
                 } else {
                     // Check ID3 tags
-                    if (ID3Tags.hasID3v1Tag(audioData) || ID3Tags.hasID3v2Tag(audioData)) {
+                    ByteBuffer audioBuffer = audioSource.getByteBuffer();
+                    if (ID3Tags.hasID3v1Tag(audioBuffer) || ID3Tags.hasID3v2Tag(audioBuffer)) {
                         throw new IllegalArgumentException("FS pack file does not support ID3 tags in MP3 files.");
                     }
                     // Check that the file is MONO / 44100Hz
-                    AudioFileFormat audioFileFormat = AudioSystem.getAudioFileFormat(new ByteArrayInputStream(audioData));
-                    if (audioFileFormat.getFormat().getChannels() != AudioConversion.CHANNELS
-                            || audioFileFormat.getFormat().getSampleRate() != AudioConversion.MP3_SAMPLE_RATE) {
+                    MP3FrameScanner.MP3Info mp3Info = MP3FrameScanner.scan(audioBuffer);
+                    if (mp3Info == null) {
+                        throw new IllegalArgumentException("FS pack file requires audio assets to be MP3.");
+                    }
+                    if (mp3Info.getChannels() != AudioConversion.CHANNELS
+                            || mp3Info.getSampleRate() != AudioConversion.MP3_SAMPLE_RATE) {
                         throw new IllegalArgumentException("FS pack file requires MP3 audio assets to be MONO / 44100Hz.");
                     }
                 }
                 audioIndex = audioHashOrdered.size();
                 audioHashOrdered.add(audioHash);
-                assets.putIfAbsent(audioHash, audioData);
+                assets.putIfAbsent(audioHash, audioSource);
             } else {
                 audioIndex = audioHashOrdered.indexOf(audioHash);
             }
@@ -225,10 +231,9 @@ public class FsStoryPackWriter {
             // Write image data into file
             File rfFile = new File(packFolder, IMAGE_FOLDER + rfPath.replace('\\', '/'));
             rfFile.getParentFile().mkdirs();
-            FileOutputStream rfFos = new FileOutputStream(rfFile);
-            byte[] rfBytes = assets.get(imageHash);
-            rfFos.write(rfBytes);
-            rfFos.close();
+            try (FileOutputStream rfFos = new FileOutputStream(rfFile)) {
+                assets.get(imageHash).transferTo(rfFos);
+            }
         }
         riDos.close();
         riBaos.close();
@@ -250,10 +255,9 @@ public class FsStoryPackWriter {
             // Write sound data into file
             File sfFile = new File(packFolder, SOUND_FOLDER + sfPath.replace('\\', '/'));
             sfFile.getParentFile().mkdirs();
-            FileOutputStream sfFos = new FileOutputStream(sfFile);
-            byte[] sfBytes = assets.get(audioHash);
-            sfFos.write(sfBytes);
-            sfFos.close();
+            try (FileOutputStream sfFos = new FileOutputStream(sfFile)) {
+                assets.get(audioHash).transferTo(sfFos);
+            }
         }
         siDos.close();
         siBaos.close();
@@ -264,6 +268,11 @@ public class FsStoryPackWriter {
         return packFolder.toPath();
     }
 
+    // Folder of the given pack in the output folder
+    public static Path packFolder(Path outputFolder, String packUuid) {
+        return outputFolder.resolve(transformUuid(UUID.fromString(packUuid)));
+    }
+
     private static String transformUuid(UUID uuid) {
         String uuidStr = uuid.toString().replaceAll("-", "");
         return uuidStr.substring(uuidStr.length()-8).toUpperCase();
@@ -0,0 +1,46 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.model.asset;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class AssetDedupKeysTest {
+
+    @Test
+    void sameContentHasSameKey() {
+        AssetDedupKeys dedupKeys = new AssetDedupKeys();
+        String key = dedupKeys.keyOf(new ByteArrayAssetSource(new byte[]{1, 2, 3}));
+        assertEquals(key, dedupKeys.keyOf(new ByteArrayAssetSource(new byte[]{1, 2, 3})));
+        assertNotEquals(key, dedupKeys.keyOf(new ByteArrayAssetSource(new byte[]{1, 2, 4})));
+    }
+
+    @Test
+    void collidingContentsHaveDistinctKeys() {
+        AssetDedupKeys dedupKeys = new AssetDedupKeys();
+        String first = dedupKeys.keyOf(new CollidingAssetSource(new byte[]{1, 2, 3}));
+        String second = dedupKeys.keyOf(new CollidingAssetSource(new byte[]{4, 5, 6}));
+        assertNotEquals(first, second);
+        // Keys do not depend on how many times they are requested
+        assertEquals(first, dedupKeys.keyOf(new CollidingAssetSource(new byte[]{1, 2, 3})));
+        assertEquals(second, dedupKeys.keyOf(new CollidingAssetSource(new byte[]{4, 5, 6})));
+    }
+
+    // Source whose dedup key is the same whatever its content
+    private static class CollidingAssetSource extends ByteArrayAssetSource {
+        private CollidingAssetSource(byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public String getDedupKey() {
+            return "0-3";
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.reader.archive;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import studio.core.v1.model.metadata.StoryPackMetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArchiveStoryPackReaderTest {
+
+    private static final String VERSION = "\"version\":2";
+    private static final String TITLE = "\"title\":\"Title\"";
+    private static final String DESCRIPTION = "\"description\":\"Description\"";
+    private static final String NIGHT_MODE = "\"nightModeAvailable\":true";
+    private static final String STAGE_NODES = "\"stageNodes\":[{\"uuid\":\"u1\",\"image\":null},{\"uuid\":\"u2\"}]";
+    private static final String ACTION_NODES = "\"actionNodes\":[{\"id\":\"a1\",\"options\":[\"u2\"]}]";
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            // Order of the archive writer
+            TITLE + "," + DESCRIPTION + "," + VERSION + "," + NIGHT_MODE + "," + STAGE_NODES + "," + ACTION_NODES,
+            VERSION + "," + ACTION_NODES + "," + TITLE + "," + STAGE_NODES + "," + DESCRIPTION + "," + NIGHT_MODE,
+            STAGE_NODES + "," + ACTION_NODES + "," + TITLE + "," + DESCRIPTION + "," + NIGHT_MODE + "," + VERSION,
+            ACTION_NODES + "," + STAGE_NODES + "," + VERSION + "," + TITLE + "," + DESCRIPTION + "," + NIGHT_MODE,
+            NIGHT_MODE + "," + STAGE_NODES + "," + DESCRIPTION + "," + ACTION_NODES + "," + TITLE + "," + VERSION
+    })
+    void readsMetadataInAnyKeyOrder(String keys) throws IOException {
+        byte[] archive = archive("{" + keys + "}");
+        // Reading stops after the first stage node once the version is known: metadata written after it are skipped
+        boolean readsTitle = keys.indexOf(TITLE) < keys.indexOf(STAGE_NODES) || keys.indexOf(VERSION) > keys.indexOf(STAGE_NODES);
+        ArchiveStoryPackReader reader = new ArchiveStoryPackReader();
+        assertMetadata(reader.readMetadata(new SeekableInMemoryByteChannel(archive)), readsTitle);
+        assertMetadata(reader.readMetadata(new ByteArrayInputStream(archive)), readsTitle);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "{" + VERSION + "," + ACTION_NODES + "}",
+            "{" + STAGE_NODES + "," + ACTION_NODES + "}"
+    })
+    void failsWithoutVersionOrStageNodes(String descriptor) throws IOException {
+        byte[] archive = archive(descriptor);
+        IOException e = assertThrows(IOException.class,
+                () -> new ArchiveStoryPackReader().readMetadata(new SeekableInMemoryByteChannel(archive)));
+        assertTrue(e.getMessage().contains("story.json"));
+    }
+
+    private static void assertMetadata(StoryPackMetadata metadata, boolean readsTitle) {
+        assertEquals(2, metadata.getVersion());
+        assertEquals("u1", metadata.getUuid());
+        if (readsTitle) {
+            assertEquals("Title", metadata.getTitle());
+        }
+    }
+
+    private static byte[] archive(String descriptor) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(output)) {
+            zos.putArchiveEntry(new ZipArchiveEntry("story.json"));
+            zos.write(descriptor.getBytes(StandardCharsets.UTF_8));
+            zos.closeArchiveEntry();
+        }
+        return output.toByteArray();
+    }
+}
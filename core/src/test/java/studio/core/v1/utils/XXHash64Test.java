@@ -0,0 +1,74 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+
+package studio.core.v1.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XXHash64Test {
+
+    @Test
+    void matchesReferenceValues() {
+        assertEquals(0xEF46DB3751D8E999L, XXHash64.hash(new byte[0]));
+        assertEquals(0x44BC2CF5AD770999L, XXHash64.hash("abc".getBytes(StandardCharsets.US_ASCII)));
+        assertEquals(0xFBCEA83C8A378BF1L, XXHash64.hash("Nobody inspects the spammish repetition".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void chunkedUpdatesMatchSingleUpdate() {
+        byte[] data = randomBytes(1000);
+        long expected = XXHash64.hash(data);
+        for (int chunkSize : new int[]{1, 7, 31, 32, 33, 100, 999}) {
+            XXHash64 xxHash64 = new XXHash64();
+            for (int offset = 0; offset < data.length; offset += chunkSize) {
+                xxHash64.update(data, offset, Math.min(chunkSize, data.length - offset));
+            }
+            assertEquals(expected, xxHash64.getValue(), "chunks of " + chunkSize + " bytes");
+        }
+    }
+
+    @Test
+    void updateConsumesBufferOfAnyByteOrder() {
+        byte[] data = randomBytes(1000);
+        long expected = XXHash64.hash(data);
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            XXHash64 xxHash64 = new XXHash64();
+            ByteBuffer buffer = ByteBuffer.wrap(data).order(order);
+            // Incomplete stripe first, then the rest of the buffer
+            buffer.limit(10);
+            xxHash64.update(buffer);
+            assertEquals(10, buffer.position());
+            buffer.limit(data.length);
+            xxHash64.update(buffer);
+            assertEquals(data.length, buffer.position());
+            assertEquals(order, buffer.order());
+            assertEquals(expected, xxHash64.getValue(), order.toString());
+        }
+    }
+
+    @Test
+    void hashDoesNotMoveBuffer() {
+        byte[] data = randomBytes(100);
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(20);
+        assertEquals(XXHash64.hash(Arrays.copyOfRange(data, 20, 100)), XXHash64.hash(buffer));
+        assertEquals(20, buffer.position());
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+}
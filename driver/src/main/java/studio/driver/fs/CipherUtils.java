@@ -7,7 +7,6 @@
 package studio.driver.fs;
 
 import studio.core.v1.reader.fs.FsStoryPackReader;
-import studio.core.v1.utils.BytesUtils;
 import studio.core.v1.utils.XXTEACipher;
 import studio.driver.model.fs.FsDeviceKeyV3;
 
@@ -16,11 +15,13 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 /*
 On firmware V2:
@@ -69,32 +70,17 @@ public class CipherUtils {
         Files.write(new File(packFolder.toFile(), BOOT_FILENAME).toPath(), deviceKeyV3.getBt());
     }
 
+    // Blocks are ciphered and deciphered in place: the given data is modified, and returned
     static byte[] cipherFirstBlockCommonKey(byte[] data) {
-        byte[] block = Arrays.copyOfRange(data, 0, Math.min(CIPHER_BLOCK_SIZE_ASSETS_V2, data.length));
-        int[] dataInt = BytesUtils.toIntArray(block, ByteOrder.LITTLE_ENDIAN);
-        int[] encryptedInt = XXTEACipher.btea(dataInt, Math.min(CIPHER_BLOCK_SIZE_ASSETS_V2/4, data.length/4), BytesUtils.toIntArray(XXTEACipher.COMMON_KEY, ByteOrder.BIG_ENDIAN));
-        byte[] encryptedBlock = BytesUtils.toByteArray(encryptedInt, ByteOrder.LITTLE_ENDIAN);
-        ByteBuffer bb = ByteBuffer.allocate(data.length);
-        bb.put(encryptedBlock);
-        if (data.length > CIPHER_BLOCK_SIZE_ASSETS_V2) {
-            bb.put(Arrays.copyOfRange(data, CIPHER_BLOCK_SIZE_ASSETS_V2, data.length));
-        }
-        return bb.array();
+        XXTEACipher.cipherCommonKey(ByteBuffer.wrap(data), CIPHER_BLOCK_SIZE_ASSETS_V2);
+        return data;
     }
     static byte[] decipherFirstBlockCommonKey(byte[] data) {
-        byte[] block = Arrays.copyOfRange(data, 0, Math.min(CIPHER_BLOCK_SIZE_ASSETS_V2, data.length));
-        int[] dataInt = BytesUtils.toIntArray(block, ByteOrder.LITTLE_ENDIAN);
-        int[] decryptedInt = XXTEACipher.btea(dataInt, -(Math.min(CIPHER_BLOCK_SIZE_ASSETS_V2/4, data.length/4)), BytesUtils.toIntArray(XXTEACipher.COMMON_KEY, ByteOrder.BIG_ENDIAN));
-        byte[] decryptedBlock = BytesUtils.toByteArray(decryptedInt, ByteOrder.LITTLE_ENDIAN);
-        ByteBuffer bb = ByteBuffer.allocate(data.length);
-        bb.put(decryptedBlock);
-        if (data.length > CIPHER_BLOCK_SIZE_ASSETS_V2) {
-            bb.put(Arrays.copyOfRange(data, CIPHER_BLOCK_SIZE_ASSETS_V2, data.length));
-        }
-        return bb.array();
+        XXTEACipher.decipherCommonKey(ByteBuffer.wrap(data), CIPHER_BLOCK_SIZE_ASSETS_V2);
+        return data;
     }
     private static byte[] computeSpecificKeyV2FromUUID(byte[] uuid) {
-        byte[] btKey = decipherFirstBlockCommonKey(uuid);
+        byte[] btKey = decipherFirstBlockCommonKey(uuid.clone());
         byte[] reorderedBtKey = new byte[]{
                 btKey[11], btKey[10], btKey[9], btKey[8],
                 btKey[15], btKey[14], btKey[13], btKey[12],
@@ -104,38 +90,78 @@ public class CipherUtils {
         return reorderedBtKey;
     }
     static byte[] cipherFirstBlockSpecificKeyV2(byte[] data, byte[] specificKey) {
-        byte[] block = Arrays.copyOfRange(data, 0, Math.min(CIPHER_BLOCK_SIZE_BOOT_V2, data.length));
-        int[] dataInt = BytesUtils.toIntArray(block, ByteOrder.LITTLE_ENDIAN);
-        int[] encryptedInt = XXTEACipher.btea(dataInt, Math.min(CIPHER_BLOCK_SIZE_BOOT_V2/4, data.length/4), BytesUtils.toIntArray(specificKey, ByteOrder.BIG_ENDIAN));
-        byte[] encryptedBlock = BytesUtils.toByteArray(encryptedInt, ByteOrder.LITTLE_ENDIAN);
-        ByteBuffer bb = ByteBuffer.allocate(data.length);
-        bb.put(encryptedBlock);
-        if (data.length > CIPHER_BLOCK_SIZE_BOOT_V2) {
-            bb.put(Arrays.copyOfRange(data, CIPHER_BLOCK_SIZE_BOOT_V2, data.length));
-        }
-        return bb.array();
+        XXTEACipher.cipher(ByteBuffer.wrap(data), CIPHER_BLOCK_SIZE_BOOT_V2, XXTEACipher.toKeyWords(specificKey));
+        return data;
     }
 
     static byte[] cipherFirstBlockSpecificKeyV3(byte[] data, FsDeviceKeyV3 deviceKeyV3) {
-        byte[] block = Arrays.copyOfRange(data, 0, Math.min(CIPHER_BLOCK_SIZE_ASSETS_V3, data.length));
-        byte[] encryptedBlock = AESCBCCipher.cipher(block, deviceKeyV3);
+        int blockLength = Math.min(CIPHER_BLOCK_SIZE_ASSETS_V3, data.length);
+        byte[] encryptedBlock = AESCBCCipher.cipher(Arrays.copyOf(data, blockLength), deviceKeyV3);
+        if (encryptedBlock.length == blockLength) {
+            System.arraycopy(encryptedBlock, 0, data, 0, blockLength);
+            return data;
+        }
+        // Block was padded
         int outputLength = encryptedBlock.length + Math.max(0, data.length - CIPHER_BLOCK_SIZE_ASSETS_V3);
         ByteBuffer bb = ByteBuffer.allocate(outputLength);
         bb.put(encryptedBlock);
         if (data.length > CIPHER_BLOCK_SIZE_ASSETS_V3) {
-            bb.put(Arrays.copyOfRange(data, CIPHER_BLOCK_SIZE_ASSETS_V3, data.length));
+            bb.put(data, CIPHER_BLOCK_SIZE_ASSETS_V3, data.length - CIPHER_BLOCK_SIZE_ASSETS_V3);
         }
         return bb.array();
     }
     static byte[] decipherFirstBlockSpecificKeyV3(byte[] data, FsDeviceKeyV3 deviceKeyV3) {
-        byte[] block = Arrays.copyOfRange(data, 0, Math.min(CIPHER_BLOCK_SIZE_ASSETS_V3, data.length));
-        byte[] decryptedBlock = AESCBCCipher.decipher(block, deviceKeyV3);
-        ByteBuffer bb = ByteBuffer.allocate(data.length);
-        bb.put(decryptedBlock);
-        if (data.length > CIPHER_BLOCK_SIZE_ASSETS_V3) {
-            bb.put(Arrays.copyOfRange(data, CIPHER_BLOCK_SIZE_ASSETS_V3, data.length));
+        int blockLength = Math.min(CIPHER_BLOCK_SIZE_ASSETS_V3, data.length);
+        byte[] decryptedBlock = AESCBCCipher.decipher(Arrays.copyOf(data, blockLength), deviceKeyV3);
+        // Padding, if any, does not fit in the data
+        System.arraycopy(decryptedBlock, 0, data, 0, blockLength);
+        return data;
+    }
+
+    // Files are copied with their first block ciphered or deciphered, and their content otherwise unchanged
+    static void cipherFirstBlockCommonKey(Path source, Path dest) throws IOException {
+        copyWithFirstBlock(source, dest, CIPHER_BLOCK_SIZE_ASSETS_V2, CipherUtils::cipherFirstBlockCommonKey);
+    }
+    static void decipherFirstBlockCommonKey(Path source, Path dest) throws IOException {
+        copyWithFirstBlock(source, dest, CIPHER_BLOCK_SIZE_ASSETS_V2, CipherUtils::decipherFirstBlockCommonKey);
+    }
+    static void cipherFirstBlockSpecificKeyV3(Path source, Path dest, FsDeviceKeyV3 deviceKeyV3) throws IOException {
+        copyWithFirstBlock(source, dest, CIPHER_BLOCK_SIZE_ASSETS_V3, block -> cipherFirstBlockSpecificKeyV3(block, deviceKeyV3));
+    }
+    // Source file is ciphered with the common key (V2)
+    static void recipherFirstBlockSpecificKeyV3(Path source, Path dest, FsDeviceKeyV3 deviceKeyV3) throws IOException {
+        copyWithFirstBlock(source, dest, CIPHER_BLOCK_SIZE_ASSETS_V3, block -> cipherFirstBlockSpecificKeyV3(decipherFirstBlockCommonKey(block), deviceKeyV3));
+    }
+    static void decipherFirstBlockSpecificKeyV3(Path source, Path dest, FsDeviceKeyV3 deviceKeyV3) throws IOException {
+        copyWithFirstBlock(source, dest, CIPHER_BLOCK_SIZE_ASSETS_V3, block -> decipherFirstBlockSpecificKeyV3(block, deviceKeyV3));
+    }
+
+    // Only the first block goes through the heap, to be transformed: the rest of the file is transferred between the
+    // channels, which the OS may do without copying. The transformed block may be longer than the source block (AES
+    // padding of short files).
+    private static void copyWithFirstBlock(Path source, Path dest, int blockSize, UnaryOperator<byte[]> blockTransform) throws IOException {
+        try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel destChannel = FileChannel.open(dest, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long size = sourceChannel.size();
+            ByteBuffer block = ByteBuffer.allocate((int) Math.min(blockSize, size));
+            while (block.hasRemaining()) {
+                if (sourceChannel.read(block) < 0) {
+                    throw new IOException("Failed to copy " + source + ": unexpected end of file");
+                }
+            }
+            ByteBuffer output = ByteBuffer.wrap(blockTransform.apply(block.array()));
+            while (output.hasRemaining()) {
+                destChannel.write(output);
+            }
+            long position = block.capacity();
+            while (position < size) {
+                long transferred = sourceChannel.transferTo(position, size - position, destChannel);
+                if (transferred <= 0) {
+                    throw new IOException("Failed to copy " + source + ": " + (size - position) + " bytes left");
+                }
+                position += transferred;
+            }
         }
-        return bb.array();
     }
 
 }
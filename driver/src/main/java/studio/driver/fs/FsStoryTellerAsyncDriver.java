@@ -558,26 +558,22 @@ public class FsStoryTellerAsyncDriver {
                                 if (deviceInfos.getFirmwareMajor() == 2) {
                                     if (isUpload) {
                                         if (isCleartext) {
-                                            byte[] ciphered = CipherUtils.cipherFirstBlockCommonKey(Files.readAllBytes(s));
-                                            Files.write(d, ciphered);
+                                            CipherUtils.cipherFirstBlockCommonKey(s, d);
                                         } else {
                                             Files.copy(s, d);
                                         }
                                     } else {    // Download
-                                        byte[] deciphered = CipherUtils.decipherFirstBlockCommonKey(Files.readAllBytes(s));
-                                        Files.write(d, deciphered);
+                                        CipherUtils.decipherFirstBlockCommonKey(s, d);
                                     }
                                 } else {    // V3
                                     if (isUpload) {
-                                        byte[] data = Files.readAllBytes(s);
-                                        if (!isCleartext) {
-                                            data = CipherUtils.decipherFirstBlockCommonKey(data);
+                                        if (isCleartext) {
+                                            CipherUtils.cipherFirstBlockSpecificKeyV3(s, d, deviceInfos.getDeviceKeyV3());
+                                        } else {
+                                            CipherUtils.recipherFirstBlockSpecificKeyV3(s, d, deviceInfos.getDeviceKeyV3());
                                         }
-                                        byte[] ciphered = CipherUtils.cipherFirstBlockSpecificKeyV3(data, deviceInfos.getDeviceKeyV3());
-                                        Files.write(d, ciphered);
                                     } else {    // Download
-                                        byte[] deciphered = CipherUtils.decipherFirstBlockSpecificKeyV3(Files.readAllBytes(s), deviceInfos.getDeviceKeyV3());
-                                        Files.write(d, deciphered);
+                                        CipherUtils.decipherFirstBlockSpecificKeyV3(s, d, deviceInfos.getDeviceKeyV3());
                                     }
                                 }
                             } else {
@@ -13,14 +13,13 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import org.apache.commons.io.FileUtils;
+import studio.core.v1.converter.PackConverter;
 import studio.core.v1.model.StoryPack;
 import studio.core.v1.model.metadata.StoryPackMetadata;
 import studio.core.v1.reader.archive.ArchiveStoryPackReader;
 import studio.core.v1.reader.binary.BinaryStoryPackReader;
 import studio.core.v1.reader.fs.FsStoryPackReader;
-import studio.core.v1.utils.PackAssetsCompression;
-import studio.core.v1.writer.archive.ArchiveStoryPackWriter;
-import studio.core.v1.writer.binary.BinaryStoryPackWriter;
+import studio.core.v1.utils.AssetConversionCache;
 import studio.core.v1.writer.fs.FsStoryPackWriter;
 import studio.metadata.DatabaseMetadataService;
 import studio.metadata.DatabasePackMetadata;
@@ -28,8 +27,8 @@ import studio.webui.model.LibraryPack;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -46,11 +45,17 @@ public class LibraryService {
     public static final String LOCAL_LIBRARY_PATH = "/.studio/library/";
     public static final String TMP_DIR_PROP = "studio.tmpdir";
     public static final String TMP_DIR_PATH = "/.studio/tmp/";
+    public static final String CACHE_DIR_PROP = "studio.cachedir";
+    public static final String CACHE_DIR_PATH = "/.studio/cache/assets/";
+    public static final String CACHE_MAX_SIZE_PROP = "studio.cache.maxsize";
+    public static final long CACHE_MAX_SIZE_DEFAULT = 1024L * 1024 * 1024;
 
     private final Logger LOGGER = LoggerFactory.getLogger(LibraryService.class);
 
     private final DatabaseMetadataService databaseMetadataService;
 
+    private final PackConverter packConverter;
+
     private final Cache<Path, Optional<LibraryPack>> cachedPacks = Caffeine.newBuilder()
             .expireAfterWrite(Duration.ofMinutes(5)).build();
 
@@ -78,6 +83,15 @@ public class LibraryService {
                 throw new IllegalStateException("Failed to initialize temp folder");
             }
         }
+
+        // Create the cache of converted assets, shared by all pack conversions. Conversions still work without it.
+        AssetConversionCache cache = null;
+        try {
+            cache = new AssetConversionCache(Paths.get(cacheDirPath()), cacheMaxSize());
+        } catch (IOException e) {
+            LOGGER.error("Failed to initialize conversion cache", e);
+        }
+        this.packConverter = new PackConverter(Paths.get(tmpDirPath()), cache);
     }
 
     public JsonObject libraryInfos() {
@@ -106,15 +120,15 @@ public class LibraryService {
                             List<LibraryPack> packs = entry.getValue();
                             packs.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
                             LOGGER.debug("Refreshing metadata for pack `" + entry.getKey() + "` from file `" + packs.get(0).getPath() + "`");
-                            this.readPackFile(packs.get(0).getPath()).ifPresent(
-                                    meta -> databaseMetadataService.refreshUnofficialMetadata(
-                                            new DatabasePackMetadata(
-                                                    meta.getMetadata().getUuid(),
-                                                    meta.getMetadata().getTitle(),
-                                                    meta.getMetadata().getDescription(),
-                                                    Optional.ofNullable(meta.getMetadata().getThumbnail()).map(thumb -> "data:image/png;base64," + Base64.getEncoder().encodeToString(thumb)).orElse(null),
-                                                    false
-                                            )
+                            // Metadata have just been read (or cached), no need to read the pack file again
+                            LibraryPack meta = packs.get(0);
+                            databaseMetadataService.refreshUnofficialMetadata(
+                                    new DatabasePackMetadata(
+                                            meta.getMetadata().getUuid(),
+                                            meta.getMetadata().getTitle(),
+                                            meta.getMetadata().getDescription(),
+                                            Optional.ofNullable(meta.getMetadata().getThumbnail()).map(thumb -> "data:image/png;base64," + Base64.getEncoder().encodeToString(thumb)).orElse(null),
+                                            false
                                     )
                             );
                         });
@@ -160,214 +174,78 @@ public class LibraryService {
     }
 
     public Optional<Path> addConvertedRawPackFile(String packPath, Boolean allowEnriched) {
-        // Archive format packs must first be converted to raw format
-        if (packPath.endsWith(".zip")) {
-            try {
-                File tmp = createTempFile(packPath, ".pack").toFile();
-
-                LOGGER.info("Pack is in archive format. Converting to raw format and storing in temporary file: " + tmp.getAbsolutePath());
-
-                LOGGER.info("Reading archive format pack");
-                ArchiveStoryPackReader packReader = new ArchiveStoryPackReader();
-                FileInputStream fis = new FileInputStream(libraryPath() + packPath);
-                StoryPack storyPack = packReader.read(fis);
-                fis.close();
-
-                // Uncompress pack assets
-                StoryPack uncompressedPack = storyPack;
-                if (PackAssetsCompression.hasCompressedAssets(storyPack)) {
-                    LOGGER.info("Uncompressing pack assets");
-                    uncompressedPack = PackAssetsCompression.withUncompressedAssets(storyPack);
-                }
-
-                LOGGER.info("Writing raw format pack");
-                BinaryStoryPackWriter packWriter = new BinaryStoryPackWriter();
-                FileOutputStream fos = new FileOutputStream(tmp);
-                packWriter.write(uncompressedPack, fos, allowEnriched);
-                fos.close();
-
-                String destinationFileName = storyPack.getUuid() + ".converted_" + System.currentTimeMillis() + ".pack";
-                Path destinationPath = Paths.get(libraryPath() + destinationFileName);
-                LOGGER.info("Moving raw format pack into local library: " + destinationPath);
-                Files.move(tmp.toPath(), destinationPath);
-
-                return Optional.of(Paths.get(destinationFileName));
-            } catch (Exception e) {
-                LOGGER.error("Failed to convert archive format pack to raw format", e);
-                throw new RuntimeException("Failed to convert archive format pack to raw format", e);
-            }
-        } else if (packPath.endsWith(".pack")) {
+        // Archive and FS format packs must first be converted to raw format
+        if (packPath.endsWith(".pack")) {
             LOGGER.error("Pack is already in raw format");
             throw new RuntimeException("Pack is already in raw format");
-        } else {
-            try {
-                File tmp = createTempFile(packPath, ".pack").toFile();
-
-                LOGGER.info("Pack is in FS format. Converting to raw format and storing in temporary file: " + tmp.getAbsolutePath());
-
-                LOGGER.info("Reading FS format pack");
-                FsStoryPackReader packReader = new FsStoryPackReader();
-                StoryPack storyPack = packReader.read(Paths.get(libraryPath() + packPath));
-
-                // Uncompress pack assets
-                StoryPack uncompressedPack = storyPack;
-                if (PackAssetsCompression.hasCompressedAssets(storyPack)) {
-                    LOGGER.info("Uncompressing pack assets");
-                    uncompressedPack = PackAssetsCompression.withUncompressedAssets(storyPack);
-                }
+        }
+        String sourceFormat = packPath.endsWith(".zip") ? "archive" : "FS";
+        try {
+            File tmp = createTempFile(packPath, ".pack").toFile();
 
-                LOGGER.info("Writing raw format pack");
-                BinaryStoryPackWriter packWriter = new BinaryStoryPackWriter();
-                FileOutputStream fos = new FileOutputStream(tmp);
-                packWriter.write(uncompressedPack, fos, allowEnriched);
-                fos.close();
+            LOGGER.info("Pack is in " + sourceFormat + " format. Converting to raw format and storing in temporary file: " + tmp.getAbsolutePath());
+            StoryPack storyPack = packConverter.toRaw(Paths.get(libraryPath() + packPath), tmp.toPath(), allowEnriched);
 
-                String destinationFileName = storyPack.getUuid() + ".converted_" + System.currentTimeMillis() + ".pack";
-                Path destinationPath = Paths.get(libraryPath() + destinationFileName);
-                LOGGER.info("Moving raw format pack into local library: " + destinationPath);
-                Files.move(tmp.toPath(), destinationPath);
+            String destinationFileName = storyPack.getUuid() + ".converted_" + System.currentTimeMillis() + ".pack";
+            Path destinationPath = Paths.get(libraryPath() + destinationFileName);
+            LOGGER.info("Moving raw format pack into local library: " + destinationPath);
+            Files.move(tmp.toPath(), destinationPath);
 
-                return Optional.of(Paths.get(destinationFileName));
-            } catch (Exception e) {
-                LOGGER.error("Failed to convert FS format pack to raw format", e);
-                throw new RuntimeException("Failed to convert FS format pack to raw format", e);
-            }
+            return Optional.of(Paths.get(destinationFileName));
+        } catch (Exception e) {
+            LOGGER.error("Failed to convert " + sourceFormat + " format pack to raw format", e);
+            throw new RuntimeException("Failed to convert " + sourceFormat + " format pack to raw format", e);
         }
     }
 
     public Optional<Path> addConvertedArchivePackFile(String packPath) {
-        // Binary format packs must first be converted to archive format
+        // Raw and FS format packs must first be converted to archive format
         if (packPath.endsWith(".zip")) {
             LOGGER.error("Pack is already in archive format");
             throw new RuntimeException("Pack is already in archive format");
-        } else if (packPath.endsWith(".pack")) {
-            try {
-                File tmp = createTempFile(packPath, ".zip").toFile();
-
-                LOGGER.info("Pack is in raw format. Converting to archive format and storing in temporary file: " + tmp.getAbsolutePath());
-
-                LOGGER.info("Reading raw format pack");
-                BinaryStoryPackReader packReader = new BinaryStoryPackReader();
-                FileInputStream fis = new FileInputStream(libraryPath() + packPath);
-                StoryPack storyPack = packReader.read(fis);
-                fis.close();
-
-                // Compress pack assets
-                LOGGER.info("Compressing pack assets");
-                StoryPack compressedPack = PackAssetsCompression.withCompressedAssets(storyPack);
-
-                LOGGER.info("Writing archive format pack");
-                ArchiveStoryPackWriter packWriter = new ArchiveStoryPackWriter();
-                FileOutputStream fos = new FileOutputStream(tmp);
-                packWriter.write(compressedPack, fos);
-                fos.close();
-
-                String destinationFileName = compressedPack.getUuid() + ".converted_" + System.currentTimeMillis() + ".zip";
-                Path destinationPath = Paths.get(libraryPath() + destinationFileName);
-                LOGGER.info("Moving archive format pack into local library: " + destinationPath);
-                Files.move(tmp.toPath(), destinationPath);
-
-                return Optional.of(Paths.get(destinationFileName));
-            } catch (Exception e) {
-                LOGGER.error("Failed to convert raw format pack to archive format", e);
-                throw new RuntimeException("Failed to convert raw format pack to archive format", e);
-            }
-        } else {
-            try {
-                File tmp = createTempFile(packPath, ".zip").toFile();
-
-                LOGGER.info("Pack is in FS format. Converting to archive format and storing in temporary file: " + tmp.getAbsolutePath());
-
-                LOGGER.info("Reading FS format pack");
-                FsStoryPackReader packReader = new FsStoryPackReader();
-                StoryPack storyPack = packReader.read(Paths.get(libraryPath() + packPath));
-
-                // No need to compress pack assets
+        }
+        String sourceFormat = packPath.endsWith(".pack") ? "raw" : "FS";
+        try {
+            File tmp = createTempFile(packPath, ".zip").toFile();
 
-                LOGGER.info("Writing archive format pack");
-                ArchiveStoryPackWriter packWriter = new ArchiveStoryPackWriter();
-                FileOutputStream fos = new FileOutputStream(tmp);
-                packWriter.write(storyPack, fos);
-                fos.close();
+            LOGGER.info("Pack is in " + sourceFormat + " format. Converting to archive format and storing in temporary file: " + tmp.getAbsolutePath());
+            StoryPack storyPack = packConverter.toArchive(Paths.get(libraryPath() + packPath), tmp.toPath());
 
-                String destinationFileName = storyPack.getUuid() + ".converted_" + System.currentTimeMillis() + ".zip";
-                Path destinationPath = Paths.get(libraryPath() + destinationFileName);
-                LOGGER.info("Moving archive format pack into local library: " + destinationPath);
-                Files.move(tmp.toPath(), destinationPath);
+            String destinationFileName = storyPack.getUuid() + ".converted_" + System.currentTimeMillis() + ".zip";
+            Path destinationPath = Paths.get(libraryPath() + destinationFileName);
+            LOGGER.info("Moving archive format pack into local library: " + destinationPath);
+            Files.move(tmp.toPath(), destinationPath);
 
-                return Optional.of(Paths.get(destinationFileName));
-            } catch (Exception e) {
-                LOGGER.error("Failed to convert FS format pack to archive format", e);
-                throw new RuntimeException("Failed to convert FS format pack to archive format", e);
-            }
+            return Optional.of(Paths.get(destinationFileName));
+        } catch (Exception e) {
+            LOGGER.error("Failed to convert " + sourceFormat + " format pack to archive format", e);
+            throw new RuntimeException("Failed to convert " + sourceFormat + " format pack to archive format", e);
         }
     }
 
     public Optional<Path> addConvertedFsPackFile(String packPath, Boolean allowEnriched) {
-        // Archive format packs must first be converted to FS format
-        if (packPath.endsWith(".zip")) {
-            try {
-                Path tmp = createTempDirectory(packPath);
-
-                LOGGER.info("Pack to transfer is in archive format. Converting to FS format and storing in temporary folder: " + tmp.toAbsolutePath().toString());
-
-                LOGGER.info("Reading archive format pack");
-                ArchiveStoryPackReader packReader = new ArchiveStoryPackReader();
-                FileInputStream fis = new FileInputStream(libraryPath() + packPath);
-                StoryPack storyPack = packReader.read(fis);
-                fis.close();
-
-                // Prepare assets (RLE-encoded BMP, audio must already be MP3)
-                LOGGER.info("Converting assets if necessary");
-                StoryPack packWithPreparedAssets = PackAssetsCompression.withPreparedAssetsFirmware2dot4(storyPack);
-
-                LOGGER.info("Writing FS format pack");
-                FsStoryPackWriter writer = new FsStoryPackWriter();
-                Path folderPath = writer.write(packWithPreparedAssets, tmp);
-
-                String destinationFolder = packWithPreparedAssets.getUuid() + ".converted_" + System.currentTimeMillis();
-                Path destinationPath = Paths.get(libraryPath() + destinationFolder);
-                LOGGER.info("Moving FS format pack into local library: " + destinationPath);
-                Files.move(folderPath, destinationPath);
-
-                return Optional.of(Paths.get(destinationFolder));
-            } catch (Exception e) {
-                LOGGER.error("Failed to convert archive format pack to FS format", e);
-                throw new RuntimeException("Failed to convert archive format pack to FS format", e);
-            }
-        } else if (packPath.endsWith(".pack")) {
-            try {
-                Path tmp = createTempDirectory(packPath);
-
-                LOGGER.info("Pack is in raw format. Converting to FS format and storing in temporary folder: " + tmp.toAbsolutePath().toString());
-
-                LOGGER.info("Reading raw format pack");
-                BinaryStoryPackReader packReader = new BinaryStoryPackReader();
-                FileInputStream fis = new FileInputStream(libraryPath() + packPath);
-                StoryPack storyPack = packReader.read(fis);
-                fis.close();
-
-                // Prepare assets (RLE-encoded BMP, audio must already be MP3)
-                LOGGER.info("Converting assets if necessary");
-                StoryPack packWithPreparedAssets = PackAssetsCompression.withPreparedAssetsFirmware2dot4(storyPack);
+        // Archive and raw format packs must first be converted to FS format
+        if (!packPath.endsWith(".zip") && !packPath.endsWith(".pack")) {
+            LOGGER.error("Pack is already in FS format");
+            throw new RuntimeException("Pack is already in FS format");
+        }
+        String sourceFormat = packPath.endsWith(".zip") ? "archive" : "raw";
+        try {
+            Path tmp = createTempDirectory(packPath);
 
-                LOGGER.info("Writing FS format pack");
-                FsStoryPackWriter writer = new FsStoryPackWriter();
-                Path folderPath = writer.write(packWithPreparedAssets, tmp);
+            LOGGER.info("Pack is in " + sourceFormat + " format. Converting to FS format and storing in temporary folder: " + tmp.toAbsolutePath().toString());
+            StoryPack storyPack = packConverter.toFs(Paths.get(libraryPath() + packPath), tmp);
+            Path folderPath = FsStoryPackWriter.packFolder(tmp, storyPack.getUuid());
 
-                String destinationFolder = packWithPreparedAssets.getUuid() + ".converted_" + System.currentTimeMillis();
-                Path destinationPath = Paths.get(libraryPath() + destinationFolder);
-                LOGGER.info("Moving FS format pack into local library: " + destinationPath);
-                Files.move(folderPath, destinationPath);
+            String destinationFolder = storyPack.getUuid() + ".converted_" + System.currentTimeMillis();
+            Path destinationPath = Paths.get(libraryPath() + destinationFolder);
+            LOGGER.info("Moving FS format pack into local library: " + destinationPath);
+            Files.move(folderPath, destinationPath);
 
-                return Optional.of(Paths.get(destinationFolder));
-            } catch (Exception e) {
-                LOGGER.error("Failed to convert raw format pack to FS format", e);
-                throw new RuntimeException("Failed to convert raw format pack to FS format", e);
-            }
-        } else {
-            LOGGER.error("Pack is already in FS format");
-            throw new RuntimeException("Pack is already in FS format");
+            return Optional.of(Paths.get(destinationFolder));
+        } catch (Exception e) {
+            LOGGER.error("Failed to convert " + sourceFormat + " format pack to FS format", e);
+            throw new RuntimeException("Failed to convert " + sourceFormat + " format pack to FS format", e);
         }
     }
 
@@ -422,6 +300,16 @@ public class LibraryService {
         return System.getProperty(TMP_DIR_PROP, System.getProperty("user.home") + TMP_DIR_PATH);
     }
 
+    private String cacheDirPath() {
+        // Path may be overridden by system property `studio.cachedir`
+        return System.getProperty(CACHE_DIR_PROP, System.getProperty("user.home") + CACHE_DIR_PATH);
+    }
+
+    private long cacheMaxSize() {
+        // Size (in bytes) may be overridden by system property `studio.cache.maxsize`
+        return Long.getLong(CACHE_MAX_SIZE_PROP, CACHE_MAX_SIZE_DEFAULT);
+    }
+
     private Path createTempFile(String prefix, String suffix) throws IOException {
         return Files.createTempFile(Paths.get(tmpDirPath()), prefix, suffix);
     }
@@ -434,10 +322,10 @@ public class LibraryService {
         LOGGER.debug("Reading pack file: " + path.toString());
         // Handle all file formats
         if (path.toString().endsWith(".zip")) {
-            try (FileInputStream fis = new FileInputStream(path.toFile())) {
+            try (SeekableByteChannel channel = Files.newByteChannel(path)) {
                 LOGGER.debug("Reading archive pack metadata.");
                 ArchiveStoryPackReader packReader = new ArchiveStoryPackReader();
-                StoryPackMetadata meta = packReader.readMetadata(fis);
+                StoryPackMetadata meta = packReader.readMetadata(channel);
                 if (meta != null) {
                     return Optional.of(new LibraryPack(path, Files.getLastModifiedTime(path).toMillis() , meta));
                 }